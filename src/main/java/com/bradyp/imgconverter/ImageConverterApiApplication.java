@@ -4,15 +4,21 @@ import java.util.concurrent.Executor;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.Bean;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import com.bradyp.imgconverter.service.profiling.QueueEvent;
+
 /**
  * Main entry class for the Image Converter application.
  */
 @SpringBootApplication
 @EnableAsync
+@EnableScheduling
+@ConfigurationPropertiesScan
 public class ImageConverterApiApplication {
 
 	public static void main(String[] args) {
@@ -26,6 +32,7 @@ public class ImageConverterApiApplication {
 		executor.setMaxPoolSize(5);
 		executor.setQueueCapacity(500);
 		executor.setThreadNamePrefix("ImageConverter-");
+		executor.setTaskDecorator(QueueEvent::decorate);
 		executor.initialize();
 		return executor;
 	}
@@ -1,9 +1,7 @@
 package com.bradyp.imgconverter.api.v1;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,6 +12,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
@@ -24,6 +23,8 @@ import com.bradyp.imgconverter.api.v1.model.ImageConversionResponse;
 import com.bradyp.imgconverter.api.v1.model.UnsupportedFormatExceptionResponse;
 import com.bradyp.imgconverter.service.ImageConverterService;
 import com.bradyp.imgconverter.service.UnsupportedFormatException;
+import com.bradyp.imgconverter.service.buffer.PooledBuffer;
+import com.bradyp.imgconverter.service.cluster.ClusterRouter;
 
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -59,13 +60,17 @@ public class ImageConverterController {
 	 * requested format and returns a path to where the converted image can be
 	 * retrieved.
 	 * 
-	 * @param request The request object.
+	 * @param request     The request object.
+	 * @param forwardedBy Set when a peer has already routed this request here.
 	 */
 	@PostMapping("/convert")
 	@ResponseStatus(HttpStatus.CREATED)
-	public ImageConversionResponse convert(@RequestBody @Validated ImageConversionRequest request) {
+	public ImageConversionResponse convert(@RequestBody @Validated ImageConversionRequest request,
+			@RequestHeader(value = ClusterRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
 		try {
-			String fileName = imageConverterService.convert(request.getSourceImage(), request.getToFormat());
+			String fileName = forwardedBy == null
+					? imageConverterService.convert(request.getSourceImage(), request.getToFormat())
+					: imageConverterService.convertLocally(request.getSourceImage(), request.getToFormat());
 			return new ImageConversionResponse(request.getToFormat(), buildFilePath(fileName));
 		} catch (UnsupportedFormatException e) {
 			throw new UnsupportedFormatExceptionResponse(e);
@@ -97,21 +102,24 @@ public class ImageConverterController {
 	/**
 	 * Retrieve a previously converted image.
 	 * 
-	 * @param response The HTTP response to which the image content will be written.
-	 * @param imgfile  The name of the file to be retrieved.
+	 * @param response    The HTTP response to which the image content will be
+	 *                    written.
+	 * @param imgfile     The name of the file to be retrieved.
+	 * @param forwardedBy Set when a peer is fetching the image from this node.
 	 */
 	@GetMapping(value = "{imgfile}")
-	public void get(final HttpServletResponse response, @PathVariable("imgfile") String imgfile) {
-		byte[] bs = imageConverterService.get(imgfile);
-
-		if (bs == null) {
-			throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format("%s not found", imgfile));
-		}
-
-		response.setHeader("Content-Disposition", String.format("inline; filename=%s", imgfile));
-
-		try {
-			IOUtils.copy(new ByteArrayInputStream(bs), response.getOutputStream());
+	public void get(final HttpServletResponse response, @PathVariable("imgfile") String imgfile,
+			@RequestHeader(value = ClusterRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+		try (PooledBuffer image = forwardedBy == null ? imageConverterService.open(imgfile)
+				: imageConverterService.openLocally(imgfile)) {
+			if (image == null) {
+				throw new ResponseStatusException(HttpStatus.NOT_FOUND, String.format("%s not found", imgfile));
+			}
+
+			response.setHeader("Content-Disposition", String.format("inline; filename=%s", imgfile));
+			response.setContentLengthLong(image.size());
+
+			image.writeTo(response.getOutputStream());
 			response.flushBuffer();
 		} catch (IOException e) {
 			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, null, e);
@@ -0,0 +1,171 @@
+package com.bradyp.imgconverter.service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.bradyp.imgconverter.service.codec.ImageEncoder;
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
+
+/**
+ * Warms up the conversion path at startup.
+ * 
+ * Synthetic sources in every supported format are written to temporary files
+ * and converted to every other format through the service's own fetch, decode
+ * and encode stages, without storing the results. This loads the ImageIO plugin
+ * registry, fills the buffer pool and lets the JIT compile the codec code. One
+ * source is larger than the PNG parallel threshold, so the parallel PNG encoder
+ * and its pool are warmed too. Application runners complete before the
+ * application is marked ready, so readiness only reports UP once the codecs are
+ * warm.
+ */
+@Component
+public class CodecWarmupRunner implements ApplicationRunner {
+	/**
+	 * Largest side of the image used to warm up the parallel PNG encoder, so a
+	 * very high threshold does not make startup allocate a huge image.
+	 */
+	private static final int MAX_PARALLEL_PNG_SIDE = 4096;
+
+	private Logger logger = LoggerFactory.getLogger(CodecWarmupRunner.class);
+
+	private final ImageConverterProperties.Warmup properties;
+
+	private final ImageConverterProperties.Png pngProperties;
+
+	private final ImageConverterService imageConverterService;
+
+	private final ImageEncoder imageEncoder;
+
+	@Autowired
+	public CodecWarmupRunner(ImageConverterProperties properties, ImageConverterService imageConverterService,
+			ImageEncoder imageEncoder) {
+		this.properties = properties.getWarmup();
+		this.pngProperties = properties.getPng();
+		this.imageConverterService = imageConverterService;
+		this.imageEncoder = imageEncoder;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		if (!properties.isEnabled()) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		int conversions = 0;
+		Path directory = null;
+		try {
+			directory = Files.createTempDirectory("imgconverter-warmup-");
+			BufferedImage image = syntheticImage(properties.getImageSize());
+			String[] formats = imageConverterService.getSupportedFormats();
+
+			for (String fromFormat : formats) {
+				URL source;
+				try {
+					source = writeSource(directory, image, fromFormat);
+				} catch (IOException | RuntimeException e) {
+					logger.warn("Could not warm up {} encoding: {}", fromFormat, e.getMessage());
+					continue;
+				}
+
+				for (String toFormat : formats) {
+					if (!fromFormat.equals(toFormat)) {
+						conversions += convert(source, fromFormat, toFormat, properties.getIterations());
+					}
+				}
+			}
+
+			int side = (int) Math.min(MAX_PARALLEL_PNG_SIDE,
+					Math.ceil(Math.sqrt(pngProperties.getParallelThreshold())));
+			if (pngProperties.isParallel() && (long) side * side >= pngProperties.getParallelThreshold()) {
+				URL source = writeSource(directory, syntheticImage(side), "bmp");
+				conversions += convert(source, "bmp", "png", properties.getParallelPngIterations());
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Could not prepare warm-up sources: {}", e.getMessage());
+		} finally {
+			delete(directory);
+		}
+
+		logger.info("Codec warm-up ran {} conversions in {} ms", conversions,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+
+	/**
+	 * End a class data sharing training run once the application is ready, so
+	 * the archive also holds the classes the warm-up loaded.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void exitIfTraining(ApplicationReadyEvent event) {
+		if (properties.isExitWhenReady()) {
+			logger.info("Warm-up done, exiting the training run");
+			System.exit(SpringApplication.exit(event.getApplicationContext()));
+		}
+	}
+
+	private int convert(URL source, String fromFormat, String toFormat, int iterations) {
+		try {
+			for (int i = 0; i < iterations; i++) {
+				imageConverterService.warmUp(source, toFormat);
+			}
+			return iterations;
+		} catch (RuntimeException e) {
+			logger.warn("Could not warm up {} to {} conversion: {}", fromFormat, toFormat, e.getMessage());
+			return 0;
+		}
+	}
+
+	private URL writeSource(Path directory, BufferedImage image, String format) throws IOException {
+		Path file = directory.resolve(String.format("source-%dx%d.%s", image.getWidth(), image.getHeight(), format));
+		try (OutputStream outputStream = Files.newOutputStream(file)) {
+			if (!imageEncoder.write(image, format, outputStream)) {
+				throw new IOException(String.format("No writer for %s", format));
+			}
+		}
+		return file.toUri().toURL();
+	}
+
+	private void delete(Path directory) {
+		if (directory == null) {
+			return;
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : files.toList()) {
+				Files.deleteIfExists(file);
+			}
+			Files.deleteIfExists(directory);
+		} catch (IOException e) {
+			logger.warn("Could not delete warm-up sources in {}: {}", directory, e.getMessage());
+		}
+	}
+
+	/**
+	 * A translucent gradient, so the alpha flattening path is exercised too.
+	 */
+	private static BufferedImage syntheticImage(int size) {
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				int alpha = 0x80 + (x * 0x7f / size);
+				image.setRGB(x, y, (alpha << 24) | ((x * 255 / size) << 16) | ((y * 255 / size) << 8) | ((x ^ y) & 0xff));
+			}
+		}
+		return image;
+	}
+}
@@ -1,13 +1,18 @@
 package com.bradyp.imgconverter.service;
 
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 
@@ -15,15 +20,50 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import com.bradyp.imgconverter.service.buffer.ChunkedOutputStream;
+import com.bradyp.imgconverter.service.buffer.PooledBuffer;
+import com.bradyp.imgconverter.service.cluster.ClusterRouter;
+import com.bradyp.imgconverter.service.codec.ImageEncoder;
+import com.bradyp.imgconverter.service.codec.ImageFormatSniffer;
 import com.bradyp.imgconverter.service.model.ImageConversionResult;
+import com.bradyp.imgconverter.service.profiling.ConversionEvent;
+import com.bradyp.imgconverter.service.profiling.DecodeEvent;
+import com.bradyp.imgconverter.service.profiling.EncodeEvent;
+import com.bradyp.imgconverter.service.profiling.FetchEvent;
+import com.bradyp.imgconverter.service.profiling.ForwardEvent;
+import com.bradyp.imgconverter.service.profiling.QueueEvent;
+import com.bradyp.imgconverter.service.profiling.StoreEvent;
+import com.bradyp.imgconverter.service.raster.DecodedImage;
+import com.bradyp.imgconverter.service.raster.RasterCache;
+import com.bradyp.imgconverter.service.rendition.RenditionScheduler;
+import com.bradyp.imgconverter.service.store.ImageStore;
 
 /**
  * Image converter services uses {@link javax.imageio.ImageIO} to convert
- * between a limited set of image formats.
+ * between a limited set of image formats. Encoding goes through the
+ * {@link ImageEncoder}, which takes a faster path for large PNGs.
  * 
- * This class implements a simple cache that acts as a store for converted
- * images In the real world, this cache would be implemented as by an external
- * data store.
+ * The source format is identified from the leading bytes of the source, so
+ * unsupported content is rejected without decoding it, and a source that is
+ * already in the requested format is stored as is.
+ * 
+ * Converted images are kept in an {@link ImageStore}, a simple in-memory cache
+ * that acts as a store for converted images. In the real world, this cache
+ * would be implemented as by an external data store.
+ * 
+ * When clustering is enabled, conversions and retrievals for images owned by
+ * another node are routed there by the {@link ClusterRouter}, and this node
+ * only caches the images it owns.
+ * 
+ * Once a source has been decoded, its other renditions are handed to the
+ * {@link RenditionScheduler} to be encoded while the node is idle, and the
+ * decoded image is kept for a short while in the {@link RasterCache} so new
+ * encodes of it skip the fetch and decode.
+ * 
+ * Each stage of a conversion emits a JDK Flight Recorder event from the
+ * {@code profiling} package, which the
+ * {@link com.bradyp.imgconverter.service.profiling.ConversionProfiler} breaks down
+ * on demand.
  */
 @Service
 public class ImageConverterService {
@@ -31,13 +71,34 @@ public class ImageConverterService {
 
 	private List<String> supportedFormatsList = Arrays.asList(supportedFormats);
 
-	private HashMap<String, byte[]> cache = new HashMap<>();
-
 	private EventPublisherService eventPublisherService;
 
+	private ClusterRouter clusterRouter;
+
+	private RenditionScheduler renditionScheduler;
+
+	private RasterCache rasterCache;
+
+	private ImageEncoder imageEncoder;
+
+	private ImageStore imageStore;
+
+	/**
+	 * Conversions running on this node, including synchronous ones on request
+	 * threads that the task executor does not see.
+	 */
+	private final AtomicInteger conversionsInFlight = new AtomicInteger();
+
 	@Autowired
-	public ImageConverterService(EventPublisherService eventPublishService) {
+	public ImageConverterService(EventPublisherService eventPublishService, ClusterRouter clusterRouter,
+			RenditionScheduler renditionScheduler, RasterCache rasterCache, ImageEncoder imageEncoder,
+			ImageStore imageStore) {
 		this.eventPublisherService = eventPublishService;
+		this.clusterRouter = clusterRouter;
+		this.renditionScheduler = renditionScheduler;
+		this.rasterCache = rasterCache;
+		this.imageEncoder = imageEncoder;
+		this.imageStore = imageStore;
 	}
 
 	/**
@@ -57,7 +118,10 @@ public class ImageConverterService {
 	 * @return The name of the converted file, which serves as the cache key for
 	 *         later retrievel.
 	 * 
-	 * @throws UnsupportedFormatException The requested format is not supported.
+	 * @throws UnsupportedFormatException The requested format, or the format of
+	 *                                    the source, is not supported.
+	 * @throws ImageTooLargeException     The converted image is too large to
+	 *                                    store.
 	 */
 	public String convert(URL sourceImageUrl, String toFormat) throws UnsupportedFormatException {
 		if (!supportedFormatsList.contains(toFormat)) {
@@ -65,29 +129,104 @@ public class ImageConverterService {
 		}
 
 		String fileName = buildFilename(sourceImageUrl, toFormat);
-		byte[] outputBytes = cache.get(fileName);
-		if (outputBytes != null) {
-			return fileName;
+		ConversionEvent conversion = new ConversionEvent(fileName, toFormat);
+		conversion.begin();
+		try {
+			Optional<String> owner = clusterRouter.remoteOwner(fileName);
+			while (owner.isPresent()) {
+				String unreachable = owner.get();
+				Optional<String> converted = forwardConvert(unreachable, sourceImageUrl, fileName, toFormat);
+				if (converted.isPresent()) {
+					conversion.forwarded = true;
+					return converted.get();
+				}
+				// The owner is off the ring now, its keys fall to the next node along
+				owner = clusterRouter.remoteOwner(fileName).filter(next -> !next.equals(unreachable));
+			}
+
+			return convertLocally(sourceImageUrl, fileName, toFormat, conversion);
+		} finally {
+			conversion.commit();
 		}
+	}
 
-		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+	/**
+	 * Convert an image to a specified format on this node, without routing to
+	 * the owning peer. Used for requests that a peer has already routed here.
+	 * 
+	 * @param sourceImageUrl URL of the image to convert
+	 * @param toFormat       Format to convert to
+	 * @return The name of the converted file.
+	 * 
+	 * @throws UnsupportedFormatException The requested format, or the format of
+	 *                                    the source, is not supported.
+	 * @throws ImageTooLargeException     The converted image is too large to
+	 *                                    store.
+	 */
+	public String convertLocally(URL sourceImageUrl, String toFormat) throws UnsupportedFormatException {
+		if (!supportedFormatsList.contains(toFormat)) {
+			throw new UnsupportedFormatException(String.format("%s is not supported", toFormat));
+		}
 
-		try (InputStream openStream = sourceImageUrl.openStream()) {
-			BufferedImage imageIn = ImageIO.read(openStream);
+		String fileName = buildFilename(sourceImageUrl, toFormat);
+		ConversionEvent conversion = new ConversionEvent(fileName, toFormat);
+		conversion.begin();
+		try {
+			return convertLocally(sourceImageUrl, fileName, toFormat, conversion);
+		} finally {
+			conversion.commit();
+		}
+	}
 
-			boolean result = ImageIO.write(imageIn, toFormat, outputStream);
-			outputStream.flush();
-			outputStream.close();
+	private String convertLocally(URL sourceImageUrl, String fileName, String toFormat, ConversionEvent conversion) {
+		conversionsInFlight.incrementAndGet();
+		try {
+			return convertAndStore(sourceImageUrl, fileName, toFormat, conversion);
+		} finally {
+			conversionsInFlight.decrementAndGet();
+		}
+	}
 
-			if (!result) {
-				// Shouldn't happen
-				throw new UnsupportedFormatException(String.format("%s is not supported", toFormat));
+	private String convertAndStore(URL sourceImageUrl, String fileName, String toFormat, ConversionEvent conversion) {
+		if (contains(fileName, toFormat)) {
+			conversion.cacheHit = true;
+			return fileName;
+		}
+
+		DecodedImage decoded = rasterCache.get(sourceImageUrl);
+		conversion.rasterCacheHit = decoded != null && !decoded.format().equals(toFormat);
+		if (!conversion.rasterCacheHit) {
+			FetchedSource source = fetch(sourceImageUrl, fileName, toFormat);
+			conversion.sourceFormat = source.format();
+			conversion.inputBytes = source.content().size();
+			if (source.format().equals(toFormat)) {
+				// Nothing to convert, keep the original bytes
+				conversion.passThrough = true;
+				conversion.outputBytes = source.content().size();
+				store(fileName, toFormat, source.content(), false);
+				return fileName;
 			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
+			try (PooledBuffer content = source.content()) {
+				decoded = decode(content, fileName, source.format(), toFormat);
+			}
+			rasterCache.put(sourceImageUrl, decoded);
 		}
 
-		cache.put(fileName, outputStream.toByteArray());
+		BufferedImage imageIn = decoded.image();
+		String sourceFormat = decoded.format();
+		conversion.sourceFormat = sourceFormat;
+		conversion.width = imageIn.getWidth();
+		conversion.height = imageIn.getHeight();
+
+		PooledBuffer output = encode(imageIn, fileName, sourceFormat, toFormat, false);
+		conversion.outputBytes = output.size();
+		store(fileName, toFormat, output, false);
+
+		// The source format is left out: a request for it is a cheap pass-through
+		List<String> otherFormats = supportedFormatsList.stream()
+				.filter(format -> !format.equals(toFormat) && !format.equals(sourceFormat)).toList();
+		renditionScheduler.schedule(fileName, otherFormats, () -> conversionsInFlight.get() > 0,
+				format -> precompute(sourceImageUrl, imageIn, sourceFormat, format));
 
 		return fileName;
 	}
@@ -107,9 +246,13 @@ public class ImageConverterService {
 		ImageConversionResult result = null;
 
 		String fileName = buildFilename(sourceImageUrl, toFormat);
+		QueueEvent.describeCurrent(fileName, toFormat);
 		try {
-			convert(sourceImageUrl, toFormat);
-			result = new ImageConversionResult(fileName, get(fileName));
+			fileName = convert(sourceImageUrl, toFormat);
+			byte[] content = get(fileName);
+			result = content == null
+					? new ImageConversionResult(fileName, "Converted image is no longer available")
+					: new ImageConversionResult(fileName, content);
 		} catch (Exception e) {
 			result = new ImageConversionResult(fileName, e.getMessage());
 		} finally {
@@ -124,13 +267,246 @@ public class ImageConverterService {
 	 * @return The image content or null if not found.
 	 */
 	public byte[] get(String fileName) {
-		byte[] bytes = cache.get(fileName);
+		try (PooledBuffer image = open(fileName)) {
+			return image == null ? null : image.toByteArray();
+		}
+	}
 
-		return bytes == null ? null : Arrays.copyOf(cache.get(fileName), bytes.length);
+	/**
+	 * Open image content for streaming, without copying it. The caller must
+	 * close the returned buffer.
+	 * 
+	 * @param fileName The image filename to retrieve.
+	 * @return The image content or null if not found.
+	 */
+	public PooledBuffer open(String fileName) {
+		PooledBuffer image = openLocally(fileName);
+		if (image != null) {
+			return image;
+		}
+
+		for (String holder : clusterRouter.remoteHolders(fileName)) {
+			byte[] bytes = fetchRemote(holder, fileName);
+			if (bytes != null) {
+				return PooledBuffer.wrap(bytes);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Open image content from this node's cache only. The caller must close the
+	 * returned buffer.
+	 * 
+	 * @param fileName The image filename to retrieve.
+	 * @return The image content or null if not found.
+	 */
+	public PooledBuffer openLocally(String fileName) {
+		return imageStore.open(fileName);
+	}
+
+	/**
+	 * Run a conversion through the fetch, decode and encode stages without
+	 * touching the store or the raster cache. Used to warm up the conversion
+	 * path at startup.
+	 * 
+	 * @param sourceImageUrl URL of the image to convert
+	 * @param toFormat       Format to convert to
+	 * @return The size of the encoded image.
+	 */
+	public long warmUp(URL sourceImageUrl, String toFormat) {
+		String fileName = buildFilename(sourceImageUrl, toFormat);
+		FetchedSource source = fetch(sourceImageUrl, fileName, toFormat);
+
+		DecodedImage decoded;
+		try (PooledBuffer content = source.content()) {
+			decoded = decode(content, fileName, source.format(), toFormat);
+		}
+
+		try (PooledBuffer output = encode(decoded.image(), fileName, decoded.format(), toFormat, false)) {
+			return output.size();
+		}
 	}
 
+	private Optional<String> forwardConvert(String peer, URL sourceImageUrl, String fileName, String toFormat) {
+		ForwardEvent event = new ForwardEvent(fileName, toFormat, peer, "convert");
+		event.begin();
+		try {
+			Optional<String> converted = clusterRouter.forwardConvert(peer, sourceImageUrl, toFormat);
+			event.answered = converted.isPresent();
+			return converted;
+		} finally {
+			event.commit();
+		}
+	}
+
+	private byte[] fetchRemote(String peer, String fileName) {
+		ForwardEvent event = new ForwardEvent(fileName, null, peer, "fetch");
+		event.begin();
+		try {
+			byte[] bytes = clusterRouter.fetch(peer, fileName);
+			event.answered = bytes != null;
+			event.outputBytes = bytes == null ? 0 : bytes.length;
+			return bytes;
+		} finally {
+			event.commit();
+		}
+	}
+
+	/**
+	 * Read the whole source into a pooled buffer, identifying its format from the
+	 * leading bytes first so unsupported content is rejected before it is read
+	 * or decoded.
+	 */
+	private FetchedSource fetch(URL sourceImageUrl, String fileName, String toFormat) {
+		FetchEvent event = new FetchEvent(fileName, toFormat);
+		event.begin();
+		try (InputStream openStream = new BufferedInputStream(sourceImageUrl.openStream())) {
+			String sourceFormat = sniffFormat(openStream);
+			event.sourceFormat = sourceFormat;
+
+			PooledBuffer content = copy(openStream);
+			event.inputBytes = content.size();
+			return new FetchedSource(sourceFormat, content);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			event.commit();
+		}
+	}
+
+	private String sniffFormat(InputStream inputStream) throws IOException {
+		String format = ImageFormatSniffer.sniff(inputStream);
+		if (format == null) {
+			throw new UnsupportedFormatException("Source image format is not supported");
+		}
+		return format;
+	}
+
+	private DecodedImage decode(PooledBuffer content, String fileName, String sourceFormat, String toFormat) {
+		DecodeEvent event = new DecodeEvent(fileName, toFormat);
+		event.sourceFormat = sourceFormat;
+		event.inputBytes = content.size();
+		event.begin();
+		try (InputStream inputStream = content.newInputStream()) {
+			BufferedImage image = ImageIO.read(inputStream);
+			if (image == null) {
+				throw new UnsupportedFormatException(
+						String.format("Source image could not be read as %s", sourceFormat));
+			}
+			event.width = image.getWidth();
+			event.height = image.getHeight();
+			return new DecodedImage(image, sourceFormat);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			event.commit();
+		}
+	}
+
+	/**
+	 * Encode and store a rendition of an already decoded source, unless it has
+	 * been converted in the meantime.
+	 */
+	private void precompute(URL sourceImageUrl, BufferedImage image, String sourceFormat, String toFormat) {
+		String fileName = buildFilename(sourceImageUrl, toFormat);
+		if (!contains(fileName, toFormat)) {
+			store(fileName, toFormat, encode(image, fileName, sourceFormat, toFormat, true), true);
+		}
+	}
+
+	private PooledBuffer encode(BufferedImage image, String fileName, String sourceFormat, String toFormat,
+			boolean speculative) {
+		EncodeEvent event = new EncodeEvent(fileName, toFormat);
+		event.sourceFormat = sourceFormat;
+		event.width = image.getWidth();
+		event.height = image.getHeight();
+		event.speculative = speculative;
+		event.begin();
+
+		ChunkedOutputStream outputStream = imageStore.newOutputStream();
+
+		try {
+			boolean result = imageEncoder.write(image, toFormat, outputStream, speculative);
+
+			if (!result) {
+				// No writer for the format accepted the image
+				throw new UnsupportedFormatException(String.format("%s is not supported", toFormat));
+			}
+
+			PooledBuffer output = outputStream.toBuffer();
+			event.outputBytes = output.size();
+			return output;
+		} catch (IOException e) {
+			outputStream.discard();
+			throw new RuntimeException(e);
+		} catch (RuntimeException e) {
+			outputStream.discard();
+			throw e;
+		} finally {
+			event.commit();
+		}
+	}
+
+	private PooledBuffer copy(InputStream inputStream) throws IOException {
+		ChunkedOutputStream outputStream = imageStore.newOutputStream();
+
+		try {
+			inputStream.transferTo(outputStream);
+		} catch (IOException e) {
+			outputStream.discard();
+			throw e;
+		}
+
+		return outputStream.toBuffer();
+	}
+
+	private boolean contains(String fileName, String toFormat) {
+		StoreEvent event = new StoreEvent(fileName, toFormat, "lookup");
+		event.begin();
+		try {
+			event.hit = imageStore.contains(fileName);
+			return event.hit;
+		} finally {
+			event.commit();
+		}
+	}
+
+	private void store(String fileName, String toFormat, PooledBuffer content, boolean speculative) {
+		StoreEvent event = new StoreEvent(fileName, toFormat, "put");
+		event.outputBytes = content.size();
+		event.begin();
+		try {
+			if (speculative) {
+				imageStore.putSpeculative(fileName, content);
+			} else {
+				imageStore.put(fileName, content);
+			}
+		} finally {
+			event.commit();
+		}
+	}
+
+	/**
+	 * Build the name a converted image is stored under. The source part is a
+	 * SHA-256 of the URL text, so every node derives the same name; unlike
+	 * {@link URL#hashCode()} it does not depend on how the host resolves.
+	 * 
+	 * @param sourceImageUrl URL of the source image.
+	 * @param toFormat       Format converted to.
+	 * @return The file name.
+	 */
 	public String buildFilename(URL sourceImageUrl, String toFormat) {
-		return String.format("%s.%s", sourceImageUrl.hashCode(), toFormat);
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256")
+					.digest(sourceImageUrl.toExternalForm().getBytes(StandardCharsets.UTF_8));
+			return String.format("%s.%s", HexFormat.of().formatHex(digest), toFormat);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private record FetchedSource(String format, PooledBuffer content) {
 	}
 
 }
\ No newline at end of file
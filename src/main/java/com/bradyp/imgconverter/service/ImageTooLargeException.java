@@ -0,0 +1,13 @@
+package com.bradyp.imgconverter.service;
+
+/**
+ * Converted image is larger than the store can hold.
+ */
+public class ImageTooLargeException extends RuntimeException {
+
+	private static final long serialVersionUID = 3871862135447318342L;
+
+	public ImageTooLargeException(String msg) {
+		super(msg);
+	}
+}
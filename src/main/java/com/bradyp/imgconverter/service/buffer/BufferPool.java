@@ -0,0 +1,117 @@
+package com.bradyp.imgconverter.service.buffer;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of byte array chunks in a few fixed size classes.
+ * 
+ * Chunks released back to the pool are kept for reuse up to a total size; past
+ * that they are left to the garbage collector. Counters of allocated and reused
+ * bytes make the pool's effect on the allocation rate visible.
+ */
+public class BufferPool {
+	/**
+	 * Chunk sizes, smallest first. A stream starts with the smallest and moves up
+	 * a class with each new chunk, so small images waste little and large ones
+	 * need few chunks.
+	 */
+	static final int[] SIZE_CLASSES = { 16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024 };
+
+	private final long maxPooledBytes;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private final ConcurrentLinkedDeque<byte[]>[] free = new ConcurrentLinkedDeque[SIZE_CLASSES.length];
+
+	private final AtomicLong pooledBytes = new AtomicLong();
+
+	private final AtomicLong allocatedBytes = new AtomicLong();
+
+	private final AtomicLong reusedBytes = new AtomicLong();
+
+	/**
+	 * @param maxPooledBytes Most bytes to keep in free chunks.
+	 */
+	public BufferPool(long maxPooledBytes) {
+		this.maxPooledBytes = maxPooledBytes;
+		for (int i = 0; i < free.length; i++) {
+			free[i] = new ConcurrentLinkedDeque<>();
+		}
+	}
+
+	/**
+	 * Open a stream that writes into chunks from this pool.
+	 * 
+	 * @return A new stream.
+	 */
+	public ChunkedOutputStream newOutputStream() {
+		return new ChunkedOutputStream(this);
+	}
+
+	/**
+	 * Take a chunk of a size class, reusing a free one if there is one.
+	 * 
+	 * @param sizeClass Index into the size classes; larger indexes are capped to
+	 *                  the largest class.
+	 * @return A chunk. Its content is undefined.
+	 */
+	byte[] acquire(int sizeClass) {
+		int index = Math.min(sizeClass, SIZE_CLASSES.length - 1);
+		byte[] chunk = free[index].pollFirst();
+		if (chunk != null) {
+			pooledBytes.addAndGet(-chunk.length);
+			reusedBytes.addAndGet(chunk.length);
+			return chunk;
+		}
+
+		allocatedBytes.addAndGet(SIZE_CLASSES[index]);
+		return new byte[SIZE_CLASSES[index]];
+	}
+
+	/**
+	 * Return a chunk to the pool. The caller must not use it afterwards.
+	 * 
+	 * @param chunk A chunk previously acquired from this pool.
+	 */
+	void release(byte[] chunk) {
+		int index = indexOf(chunk.length);
+		if (index < 0) {
+			return;
+		}
+		if (pooledBytes.addAndGet(chunk.length) > maxPooledBytes) {
+			pooledBytes.addAndGet(-chunk.length);
+			return;
+		}
+		free[index].offerFirst(chunk);
+	}
+
+	/**
+	 * @return Bytes allocated for new chunks since the pool was created.
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes.get();
+	}
+
+	/**
+	 * @return Bytes handed out again from free chunks since the pool was created.
+	 */
+	public long getReusedBytes() {
+		return reusedBytes.get();
+	}
+
+	/**
+	 * @return Bytes currently held in free chunks.
+	 */
+	public long getPooledBytes() {
+		return pooledBytes.get();
+	}
+
+	private static int indexOf(int chunkSize) {
+		for (int i = 0; i < SIZE_CLASSES.length; i++) {
+			if (SIZE_CLASSES[i] == chunkSize) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
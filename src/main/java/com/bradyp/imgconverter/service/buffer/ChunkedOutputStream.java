@@ -0,0 +1,89 @@
+package com.bradyp.imgconverter.service.buffer;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Output stream that writes into pooled chunks instead of one growing array.
+ * 
+ * Nothing is copied when the stream grows, and {@link #toBuffer()} hands the
+ * chunks over as they are. A stream that is abandoned must be
+ * {@link #discard() discarded} so its chunks go back to the pool.
+ */
+public class ChunkedOutputStream extends OutputStream {
+	private final BufferPool pool;
+
+	private final List<byte[]> chunks = new ArrayList<>();
+
+	private byte[] current;
+
+	private int position;
+
+	private long length;
+
+	private boolean done;
+
+	ChunkedOutputStream(BufferPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public void write(int b) {
+		ensureCapacity();
+		current[position++] = (byte) b;
+		length++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		while (len > 0) {
+			ensureCapacity();
+			int count = Math.min(len, current.length - position);
+			System.arraycopy(b, off, current, position, count);
+			position += count;
+			off += count;
+			len -= count;
+			length += count;
+		}
+	}
+
+	/**
+	 * Finish writing and take the written content. The stream cannot be used
+	 * afterwards.
+	 * 
+	 * @return The content, owning this stream's chunks.
+	 */
+	public PooledBuffer toBuffer() {
+		checkOpen();
+		done = true;
+		return new PooledBuffer(pool, List.copyOf(chunks), length);
+	}
+
+	/**
+	 * Abandon the stream and return its chunks to the pool.
+	 */
+	public void discard() {
+		if (done) {
+			return;
+		}
+		done = true;
+		chunks.forEach(pool::release);
+		chunks.clear();
+	}
+
+	private void ensureCapacity() {
+		checkOpen();
+		if (current == null || position == current.length) {
+			current = pool.acquire(chunks.size());
+			chunks.add(current);
+			position = 0;
+		}
+	}
+
+	private void checkOpen() {
+		if (done) {
+			throw new IllegalStateException("Stream has been handed over or discarded");
+		}
+	}
+}
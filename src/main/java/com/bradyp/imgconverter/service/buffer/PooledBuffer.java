@@ -0,0 +1,147 @@
+package com.bradyp.imgconverter.service.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable content held in pooled chunks, with a reference count.
+ * 
+ * The creator holds the first reference. Readers that may race with the owner
+ * releasing it (e.g. a cache eviction) take their own with {@link #retain()}
+ * and give it up with {@link #close()}. The chunks return to the pool when the
+ * last reference is released.
+ */
+public class PooledBuffer implements AutoCloseable {
+	private final BufferPool pool;
+
+	private final List<byte[]> chunks;
+
+	private final long length;
+
+	private final AtomicInteger references = new AtomicInteger(1);
+
+	PooledBuffer(BufferPool pool, List<byte[]> chunks, long length) {
+		this.pool = pool;
+		this.chunks = chunks;
+		this.length = length;
+	}
+
+	/**
+	 * Wrap content that did not come from a pool. Releasing it does nothing.
+	 * 
+	 * @param bytes The content.
+	 * @return A buffer over the content.
+	 */
+	public static PooledBuffer wrap(byte[] bytes) {
+		return new PooledBuffer(null, List.of(bytes), bytes.length);
+	}
+
+	/**
+	 * @return The content length in bytes.
+	 */
+	public long size() {
+		return length;
+	}
+
+	/**
+	 * Take another reference.
+	 * 
+	 * @return false if the buffer has already been released.
+	 */
+	public boolean retain() {
+		int count;
+		do {
+			count = references.get();
+			if (count <= 0) {
+				return false;
+			}
+		} while (!references.compareAndSet(count, count + 1));
+		return true;
+	}
+
+	/**
+	 * Release a reference, returning the chunks to the pool if it was the last.
+	 */
+	@Override
+	public void close() {
+		if (references.decrementAndGet() == 0 && pool != null) {
+			chunks.forEach(pool::release);
+		}
+	}
+
+	/**
+	 * Write the content to a stream, chunk by chunk.
+	 * 
+	 * @param output The stream to write to. It is not closed.
+	 * @throws IOException Writing failed.
+	 */
+	public void writeTo(OutputStream output) throws IOException {
+		long remaining = length;
+		for (byte[] chunk : chunks) {
+			int count = (int) Math.min(chunk.length, remaining);
+			output.write(chunk, 0, count);
+			remaining -= count;
+		}
+	}
+
+	/**
+	 * Read the content without copying it. The buffer must stay referenced while
+	 * the stream is in use.
+	 * 
+	 * @return A stream over the content.
+	 */
+	public InputStream newInputStream() {
+		return new InputStream() {
+			private int chunk;
+
+			private int offset;
+
+			private long remaining = length;
+
+			@Override
+			public int read() {
+				byte[] single = new byte[1];
+				return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+			}
+
+			@Override
+			public int read(byte[] bytes, int off, int len) {
+				if (remaining == 0) {
+					return -1;
+				}
+				if (offset == chunks.get(chunk).length) {
+					chunk++;
+					offset = 0;
+				}
+				byte[] current = chunks.get(chunk);
+				int count = (int) Math.min(Math.min(len, current.length - offset), remaining);
+				System.arraycopy(current, offset, bytes, off, count);
+				offset += count;
+				remaining -= count;
+				return count;
+			}
+
+			@Override
+			public int available() {
+				return (int) Math.min(Integer.MAX_VALUE, remaining);
+			}
+		};
+	}
+
+	/**
+	 * @return A copy of the content.
+	 */
+	public byte[] toByteArray() {
+		byte[] bytes = new byte[Math.toIntExact(length)];
+		int position = 0;
+		for (byte[] chunk : chunks) {
+			int count = Math.min(chunk.length, bytes.length - position);
+			System.arraycopy(chunk, 0, bytes, position, count);
+			position += count;
+		}
+		return bytes;
+	}
+}
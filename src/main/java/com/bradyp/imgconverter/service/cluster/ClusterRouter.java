@@ -0,0 +1,272 @@
+package com.bradyp.imgconverter.service.cluster;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClient;
+
+import com.bradyp.imgconverter.service.ImageTooLargeException;
+import com.bradyp.imgconverter.service.UnsupportedFormatException;
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
+
+/**
+ * Routes conversions and retrievals to the node that owns them when the
+ * application runs as a cluster.
+ * 
+ * Ownership is decided per source image rather than per converted file, so all
+ * renditions of one source land on the same node. Each node only stores the
+ * images it owns, which means the total cache capacity grows with the number of
+ * nodes.
+ * 
+ * A peer that cannot be connected to is taken off the ring, and its keys fall
+ * to the next node along, until a probe finds it healthy again. Lookups also
+ * ask that next node, which holds what was converted while the owner was away.
+ */
+@Service
+public class ClusterRouter {
+	/**
+	 * Marks a request as already routed by a peer, so the receiving node handles
+	 * it locally even if its view of the ring differs.
+	 */
+	public static final String FORWARDED_HEADER = "X-ImgConverter-Forwarded";
+
+	private static final String CONVERSIONS_PATH = "/api/v1/images/conversions/";
+
+	private Logger logger = LoggerFactory.getLogger(ClusterRouter.class);
+
+	private final boolean enabled;
+
+	private final String self;
+
+	private final ConsistentHashRing ring;
+
+	private final Set<String> downPeers = ConcurrentHashMap.newKeySet();
+
+	private final RestClient restClient;
+
+	@Autowired
+	public ClusterRouter(ImageConverterProperties properties) {
+		ImageConverterProperties.Cluster cluster = properties.getCluster();
+
+		this.enabled = cluster.isEnabled();
+		this.self = enabled ? normalize(cluster.getSelf()) : null;
+		this.ring = new ConsistentHashRing(cluster.getVirtualNodes());
+
+		if (enabled) {
+			if (self == null || self.isEmpty()) {
+				throw new IllegalStateException("imgconverter.cluster.self is required when clustering is enabled");
+			}
+			Set<String> members = new LinkedHashSet<>();
+			members.add(self);
+			cluster.getPeers().stream().map(ClusterRouter::normalize).forEach(members::add);
+			members.forEach(ring::add);
+			logger.info("Cluster mode enabled as {} with members {}", self, members);
+		}
+
+		SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+		requestFactory.setConnectTimeout(cluster.getConnectTimeout());
+		requestFactory.setReadTimeout(cluster.getReadTimeout());
+		this.restClient = RestClient.builder().requestFactory(requestFactory).build();
+	}
+
+	/**
+	 * Find the peer that owns a converted file, if it is not this node.
+	 * 
+	 * @param fileName The converted file name.
+	 * @return The base URL of the owning peer, or empty if the file should be
+	 *         handled locally.
+	 */
+	public Optional<String> remoteOwner(String fileName) {
+		if (!enabled) {
+			return Optional.empty();
+		}
+		String owner = ring.nodeFor(routingKey(fileName));
+
+		return owner == null || owner.equals(self) ? Optional.empty() : Optional.of(owner);
+	}
+
+	/**
+	 * Find the peers that may hold a converted file: its owner, and the node
+	 * that owned it while the owner was last off the ring.
+	 * 
+	 * @param fileName The converted file name.
+	 * @return Base URLs of the peers to ask, in order, leaving out this node.
+	 */
+	public List<String> remoteHolders(String fileName) {
+		if (!enabled) {
+			return List.of();
+		}
+		return ring.nodesFor(routingKey(fileName), 2).stream().filter(node -> !node.equals(self)).toList();
+	}
+
+	/**
+	 * Ask the owning peer to convert an image.
+	 * 
+	 * @param owner          Base URL of the owning peer.
+	 * @param sourceImageUrl URL of the image to convert.
+	 * @param toFormat       Format to convert to.
+	 * @return The name the owner stored the converted image under, or empty if
+	 *         the owner could not be connected to and has been taken off the
+	 *         ring.
+	 * 
+	 * @throws UnsupportedFormatException The owner rejected the request.
+	 * @throws ImageTooLargeException     The owner could not store the result.
+	 * @throws ResourceAccessException    The owner accepted the connection but
+	 *                                    did not answer in time.
+	 */
+	public Optional<String> forwardConvert(String owner, URL sourceImageUrl, String toFormat) {
+		try {
+			ConversionResponse response = restClient.post().uri(owner + CONVERSIONS_PATH + "convert")
+					.header(FORWARDED_HEADER, self).contentType(MediaType.APPLICATION_JSON)
+					.body(Map.of("sourceImage", sourceImageUrl.toString(), "toFormat", toFormat)).retrieve()
+					.body(ConversionResponse.class);
+			if (response == null || response.path() == null) {
+				throw new IllegalStateException(String.format("Peer %s returned no path for the conversion", owner));
+			}
+			return Optional.of(response.path().substring(response.path().lastIndexOf('/') + 1));
+		} catch (HttpClientErrorException e) {
+			// Keep the owner's reason, it may be the source that was rejected
+			if (e.getStatusCode() == HttpStatus.BAD_REQUEST) {
+				throw new UnsupportedFormatException(detail(e, String.format("%s is not supported", toFormat)));
+			}
+			if (e.getStatusCode() == HttpStatus.UNPROCESSABLE_ENTITY) {
+				throw new ImageTooLargeException(detail(e, "Converted image is too large to store"));
+			}
+			throw new RuntimeException(e);
+		} catch (ResourceAccessException e) {
+			if (!isConnectFailure(e)) {
+				throw e;
+			}
+			markDown(owner, e);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Fetch a converted image from the owning peer.
+	 * 
+	 * @param owner    Base URL of the owning peer.
+	 * @param fileName The converted file name.
+	 * @return The image content, or null if the owner does not have it or could
+	 *         not be connected to.
+	 * 
+	 * @throws ResourceAccessException The owner accepted the connection but did
+	 *                                 not answer in time.
+	 */
+	public byte[] fetch(String owner, String fileName) {
+		try {
+			return restClient.get().uri(owner + CONVERSIONS_PATH + fileName).header(FORWARDED_HEADER, self)
+					.retrieve().body(byte[].class);
+		} catch (HttpClientErrorException.NotFound e) {
+			return null;
+		} catch (ResourceAccessException e) {
+			if (!isConnectFailure(e)) {
+				throw e;
+			}
+			markDown(owner, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Probe unreachable peers and put the ones that respond back on the ring.
+	 */
+	@Scheduled(fixedDelayString = "${imgconverter.cluster.probe-interval:PT10S}")
+	public void probeDownPeers() {
+		for (String peer : downPeers) {
+			try {
+				restClient.get().uri(peer + CONVERSIONS_PATH + "formats").retrieve().toBodilessEntity();
+				downPeers.remove(peer);
+				ring.add(peer);
+				logger.info("Peer {} is reachable again, restored to the ring", peer);
+			} catch (Exception e) {
+				logger.debug("Peer {} still unreachable: {}", peer, e.getMessage());
+			}
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public Set<String> getMembers() {
+		return ring.getNodes();
+	}
+
+	private void markDown(String peer, Exception e) {
+		if (downPeers.add(peer)) {
+			ring.remove(peer);
+			logger.warn("Peer {} unreachable, removed from the ring: {}", peer, e.getMessage());
+		}
+	}
+
+	private static String detail(HttpClientErrorException e, String fallback) {
+		ProblemDetail problem = e.getResponseBodyAs(ProblemDetail.class);
+		return problem == null || problem.getDetail() == null ? fallback : problem.getDetail();
+	}
+
+	/**
+	 * Only a failure to connect takes a peer off the ring. A read timeout means
+	 * the peer is up but busy, e.g. with a large conversion, and moving its keys
+	 * would only run the work again on another node.
+	 */
+	private static boolean isConnectFailure(ResourceAccessException e) {
+		for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+			if (cause instanceof ConnectException || cause instanceof NoRouteToHostException
+					|| cause instanceof UnknownHostException) {
+				return true;
+			}
+			if (cause instanceof SocketTimeoutException && cause.getMessage() != null
+					&& cause.getMessage().toLowerCase().contains("connect")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Converted files are named {@code <source>.<format>}; routing on the source
+	 * part keeps every rendition of a source on the same node.
+	 * 
+	 * @param fileName The converted file name.
+	 * @return The key the file is placed on the ring by.
+	 */
+	public static String routingKey(String fileName) {
+		int dot = fileName.lastIndexOf('.');
+		return dot > 0 ? fileName.substring(0, dot) : fileName;
+	}
+
+	/**
+	 * Body of a peer's conversion response. Only the path is used.
+	 */
+	private record ConversionResponse(String format, String path) {
+	}
+
+	private static String normalize(String baseUrl) {
+		if (baseUrl == null) {
+			return null;
+		}
+		String trimmed = baseUrl.trim();
+		return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+	}
+}
@@ -0,0 +1,130 @@
+package com.bradyp.imgconverter.service.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Consistent-hash ring mapping keys onto a set of nodes.
+ * 
+ * Each node is placed on the ring at a number of virtual points, so adding or
+ * removing a node only moves the keys between it and its neighbours (roughly
+ * 1/N of the key space) rather than reshuffling everything.
+ */
+public class ConsistentHashRing {
+	private final int virtualNodes;
+
+	private final NavigableMap<Long, String> ring = new ConcurrentSkipListMap<>();
+
+	private final Set<String> nodes = new ConcurrentSkipListSet<>();
+
+	public ConsistentHashRing(int virtualNodes) {
+		if (virtualNodes < 1) {
+			throw new IllegalArgumentException("virtualNodes must be at least 1");
+		}
+		this.virtualNodes = virtualNodes;
+	}
+
+	/**
+	 * Add a node to the ring. Adding a node that is already present is a no-op.
+	 * 
+	 * @param node The node identifier.
+	 */
+	public synchronized void add(String node) {
+		if (!nodes.add(node)) {
+			return;
+		}
+		for (int i = 0; i < virtualNodes; i++) {
+			ring.put(hash(node + "#" + i), node);
+		}
+	}
+
+	/**
+	 * Remove a node from the ring. Keys it owned move to the next node along.
+	 * 
+	 * @param node The node identifier.
+	 */
+	public synchronized void remove(String node) {
+		if (!nodes.remove(node)) {
+			return;
+		}
+		for (int i = 0; i < virtualNodes; i++) {
+			ring.remove(hash(node + "#" + i), node);
+		}
+	}
+
+	/**
+	 * Find the node that owns a key.
+	 * 
+	 * @param key The key to look up.
+	 * @return The owning node, or null if the ring is empty.
+	 */
+	public String nodeFor(String key) {
+		if (ring.isEmpty()) {
+			return null;
+		}
+		Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+		if (entry == null) {
+			entry = ring.firstEntry();
+		}
+		return entry == null ? null : entry.getValue();
+	}
+
+	/**
+	 * Find the distinct nodes met walking the ring from a key: its owner first,
+	 * then the nodes its keys would fall to if the ones before were removed.
+	 * 
+	 * @param key   The key to look up.
+	 * @param count Maximum number of nodes to return.
+	 * @return The nodes, in ring order.
+	 */
+	public List<String> nodesFor(String key, int count) {
+		List<String> found = new ArrayList<>();
+		long hash = hash(key);
+		for (String node : ring.tailMap(hash, true).values()) {
+			if (found.size() >= count) {
+				return found;
+			}
+			if (!found.contains(node)) {
+				found.add(node);
+			}
+		}
+		for (String node : ring.headMap(hash, false).values()) {
+			if (found.size() >= count) {
+				return found;
+			}
+			if (!found.contains(node)) {
+				found.add(node);
+			}
+		}
+		return found;
+	}
+
+	public boolean contains(String node) {
+		return nodes.contains(node);
+	}
+
+	public Set<String> getNodes() {
+		return Set.copyOf(nodes);
+	}
+
+	private static long hash(String value) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+			long h = 0;
+			for (int i = 0; i < 8; i++) {
+				h = (h << 8) | (digest[i] & 0xff);
+			}
+			return h;
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
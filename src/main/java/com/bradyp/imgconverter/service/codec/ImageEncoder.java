@@ -0,0 +1,98 @@
+package com.bradyp.imgconverter.service.codec;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Encodes decoded images to a target format.
+ * 
+ * Most formats are written by {@link javax.imageio.ImageIO}. Large PNGs, where
+ * single-threaded deflate dominates the conversion time, are written by the
+ * {@link ParallelPngEncoder} instead, unless the encode is background work.
+ * Images the JPEG and BMP writers would refuse, such as those with alpha, are
+ * first normalized by the {@link PixelFormatNormalizer}.
+ */
+@Service
+public class ImageEncoder {
+	private final ImageConverterProperties.Png properties;
+
+	private final ForkJoinPool pngPool;
+
+	private final ParallelPngEncoder parallelPngEncoder;
+
+	private final PixelFormatNormalizer pixelFormatNormalizer;
+
+	@Autowired
+	public ImageEncoder(ImageConverterProperties properties) {
+		this.properties = properties.getPng();
+		this.pixelFormatNormalizer = new PixelFormatNormalizer(
+				Color.decode(properties.getNormalization().getBackground()).getRGB());
+
+		int parallelism = this.properties.getParallelism() > 0 ? this.properties.getParallelism()
+				: Runtime.getRuntime().availableProcessors();
+		this.pngPool = new ForkJoinPool(parallelism);
+		this.parallelPngEncoder = new ParallelPngEncoder(pngPool, this.properties.getCompressionLevel());
+	}
+
+	/**
+	 * Write an image in the given format, as {@link ImageIO#write}.
+	 * 
+	 * @param image      The image to encode.
+	 * @param formatName The target format.
+	 * @param output     The stream to write to. It is not closed.
+	 * @return false if no writer could encode the image in the given format.
+	 * @throws IOException Writing failed.
+	 */
+	public boolean write(BufferedImage image, String formatName, OutputStream output) throws IOException {
+		return write(image, formatName, output, false);
+	}
+
+	/**
+	 * Write an image in the given format, as {@link ImageIO#write}.
+	 * 
+	 * @param image      The image to encode.
+	 * @param formatName The target format.
+	 * @param output     The stream to write to. It is not closed.
+	 * @param background Whether this is background work, e.g. a speculative
+	 *                   rendition. Background work stays on the calling thread
+	 *                   rather than fanning out over all cores.
+	 * @return false if no writer could encode the image in the given format.
+	 * @throws IOException Writing failed.
+	 */
+	public boolean write(BufferedImage image, String formatName, OutputStream output, boolean background)
+			throws IOException {
+		if (PixelFormatNormalizer.needsNormalization(image, formatName)) {
+			image = pixelFormatNormalizer.normalize(image);
+		}
+
+		if ("png".equals(formatName) && !background && useParallelPng(image)) {
+			parallelPngEncoder.encode(image, output);
+			return true;
+		}
+
+		return ImageIO.write(image, formatName, output);
+	}
+
+	private boolean useParallelPng(BufferedImage image) {
+		return properties.isParallel() && pngPool.getParallelism() > 1
+				&& (long) image.getWidth() * image.getHeight() >= properties.getParallelThreshold()
+				&& ParallelPngEncoder.canEncode(image);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		pngPool.shutdown();
+	}
+}
@@ -0,0 +1,90 @@
+package com.bradyp.imgconverter.service.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Identifies an image format from the first bytes of its content, without
+ * decoding it.
+ */
+public class ImageFormatSniffer {
+	/**
+	 * Number of leading bytes needed to identify any supported format.
+	 */
+	public static final int HEADER_LENGTH = 18;
+
+	private static final byte[] PNG = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+	private static final byte[] JPEG = { (byte) 0xff, (byte) 0xd8, (byte) 0xff };
+
+	private static final byte[] GIF87A = "GIF87a".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] GIF89A = "GIF89a".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] BMP = "BM".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Sizes of the known BMP info headers, which follow the 14 byte file header.
+	 */
+	private static final int[] BMP_INFO_HEADER_SIZES = { 12, 40, 52, 56, 64, 108, 124 };
+
+	private ImageFormatSniffer() {
+	}
+
+	/**
+	 * Identify the format of a stream, leaving the stream positioned where it
+	 * was.
+	 * 
+	 * @param input A stream that supports {@link InputStream#mark(int)}.
+	 * @return The format name, as used by the converter, or null if it is not a
+	 *         supported format.
+	 * @throws IOException Reading the stream failed.
+	 */
+	public static String sniff(InputStream input) throws IOException {
+		if (!input.markSupported()) {
+			throw new IllegalArgumentException("Stream must support mark/reset");
+		}
+
+		input.mark(HEADER_LENGTH);
+		try {
+			byte[] header = input.readNBytes(HEADER_LENGTH);
+			return sniff(header, header.length);
+		} finally {
+			input.reset();
+		}
+	}
+
+	/**
+	 * Identify the format of some content from its leading bytes.
+	 * 
+	 * @param header The leading bytes of the content.
+	 * @param length The number of valid bytes in {@code header}.
+	 * @return The format name, as used by the converter, or null if it is not a
+	 *         supported format.
+	 */
+	public static String sniff(byte[] header, int length) {
+		if (startsWith(header, length, PNG)) {
+			return "png";
+		}
+		if (startsWith(header, length, JPEG)) {
+			return "jpg";
+		}
+		if (startsWith(header, length, GIF87A) || startsWith(header, length, GIF89A)) {
+			return "gif";
+		}
+		if (startsWith(header, length, BMP) && length >= HEADER_LENGTH) {
+			int infoHeaderSize = (header[14] & 0xff) | (header[15] & 0xff) << 8 | (header[16] & 0xff) << 16
+					| (header[17] & 0xff) << 24;
+			if (Arrays.stream(BMP_INFO_HEADER_SIZES).anyMatch(size -> size == infoHeaderSize)) {
+				return "bmp";
+			}
+		}
+		return null;
+	}
+
+	private static boolean startsWith(byte[] header, int length, byte[] magic) {
+		return length >= magic.length && Arrays.equals(header, 0, magic.length, magic, 0, magic.length);
+	}
+}
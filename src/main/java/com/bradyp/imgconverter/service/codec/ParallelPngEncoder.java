@@ -0,0 +1,387 @@
+package com.bradyp.imgconverter.service.codec;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG encoder that filters and deflates an image in parallel.
+ * 
+ * The image is split into bands of rows. Each band is filtered and deflated
+ * independently on a fork-join pool into raw deflate blocks that end on a byte
+ * boundary (a sync flush), primed with the last 32KB of the preceding band as a
+ * preset dictionary so compression barely suffers from the split. Joined in
+ * order, the bands form one valid zlib stream; the stream's Adler-32 is
+ * combined from the per-band checksums. Bands are written as IDAT chunks as
+ * soon as they, and every band before them, are done.
+ * 
+ * Output is always 8-bit truecolour, with alpha if the source has any.
+ */
+public class ParallelPngEncoder {
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+	private static final int MIN_BAND_BYTES = 128 * 1024;
+
+	private static final int BANDS_PER_THREAD = 4;
+
+	private static final int WINDOW_SIZE = 32 * 1024;
+
+	private static final int ADLER_BASE = 65521;
+
+	private final ForkJoinPool pool;
+
+	private final int compressionLevel;
+
+	/**
+	 * @param pool             Pool on which bands are encoded.
+	 * @param compressionLevel Deflate level, 0-9, or
+	 *                         {@link Deflater#DEFAULT_COMPRESSION}.
+	 */
+	public ParallelPngEncoder(ForkJoinPool pool, int compressionLevel) {
+		this.pool = pool;
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * Whether an image can be written by this encoder without losing precision
+	 * or colour information, i.e. it is sRGB with at most 8 bits per component.
+	 * 
+	 * Indexed images are refused: this encoder only writes truecolour, which
+	 * for a palette image is several times the size of ImageIO's palette PNG.
+	 * 
+	 * @param image The image to check.
+	 * @return true if the image can be encoded.
+	 */
+	public static boolean canEncode(BufferedImage image) {
+		ColorModel colorModel = image.getColorModel();
+		if (colorModel instanceof IndexColorModel || !colorModel.getColorSpace().isCS_sRGB()) {
+			return false;
+		}
+		for (int size : colorModel.getComponentSize()) {
+			if (size > 8) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Encode an image as PNG.
+	 * 
+	 * @param image  The image to encode.
+	 * @param output Stream the PNG is written to. It is not closed.
+	 * @throws IOException Writing to the stream failed.
+	 */
+	public void encode(BufferedImage image, OutputStream output) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		boolean alpha = image.getColorModel().hasAlpha();
+		int bytesPerPixel = alpha ? 4 : 3;
+		int rowBytes = width * bytesPerPixel;
+
+		int rowsPerBand = Math.max(ceilDiv(MIN_BAND_BYTES, rowBytes + 1),
+				ceilDiv(height, pool.getParallelism() * BANDS_PER_THREAD));
+		int bandCount = ceilDiv(height, rowsPerBand);
+
+		List<Future<Band>> bands = new ArrayList<>(bandCount);
+		for (int i = 0; i < bandCount; i++) {
+			int firstRow = i * rowsPerBand;
+			int lastRow = Math.min(height, firstRow + rowsPerBand);
+			boolean finalBand = i == bandCount - 1;
+			bands.add(pool.submit(() -> encodeBand(image, bytesPerPixel, firstRow, lastRow, finalBand)));
+		}
+
+		try {
+			DataOutputStream out = new DataOutputStream(output);
+			out.write(SIGNATURE);
+			writeChunk(out, "IHDR", header(width, height, alpha));
+
+			long adler = 1;
+			for (int i = 0; i < bandCount; i++) {
+				Band band = bands.get(i).get();
+				adler = combineAdler32(adler, band.adler(), band.length());
+
+				ByteArrayOutputStream data = new ByteArrayOutputStream(band.deflated().length + 6);
+				if (i == 0) {
+					// zlib header: deflate, 32K window, no preset dictionary
+					data.write(0x78);
+					data.write(0x9c);
+				}
+				data.write(band.deflated());
+				if (i == bandCount - 1) {
+					data.write((int) (adler >>> 24));
+					data.write((int) (adler >>> 16));
+					data.write((int) (adler >>> 8));
+					data.write((int) adler);
+				}
+				writeChunk(out, "IDAT", data.toByteArray());
+			}
+
+			writeChunk(out, "IEND", new byte[0]);
+			out.flush();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		} finally {
+			bands.forEach(band -> band.cancel(true));
+		}
+	}
+
+	private Band encodeBand(BufferedImage image, int bytesPerPixel, int firstRow, int lastRow, boolean finalBand) {
+		RowFilter filter = new RowFilter(image, bytesPerPixel);
+		Deflater deflater = new Deflater(compressionLevel, true);
+		Adler32 adler = new Adler32();
+
+		try {
+			// Filter the rows just before the band to recover the tail of the previous
+			// band's data, and use it as the dictionary so matches may reach back into it.
+			int dictionaryRows = Math.min(firstRow, ceilDiv(WINDOW_SIZE, filter.filteredRowBytes()));
+			if (dictionaryRows > 0) {
+				ByteArrayOutputStream dictionary = new ByteArrayOutputStream(dictionaryRows * filter.filteredRowBytes());
+				filter.seek(firstRow - dictionaryRows);
+				for (int y = firstRow - dictionaryRows; y < firstRow; y++) {
+					dictionary.write(filter.next(), 0, filter.filteredRowBytes());
+				}
+				byte[] bytes = dictionary.toByteArray();
+				int offset = Math.max(0, bytes.length - WINDOW_SIZE);
+				deflater.setDictionary(bytes, offset, bytes.length - offset);
+			} else {
+				filter.seek(firstRow);
+			}
+
+			ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+			byte[] buffer = new byte[64 * 1024];
+			long length = 0;
+			for (int y = firstRow; y < lastRow; y++) {
+				byte[] row = filter.next();
+				adler.update(row, 0, filter.filteredRowBytes());
+				length += filter.filteredRowBytes();
+
+				deflater.setInput(row, 0, filter.filteredRowBytes());
+				while (!deflater.needsInput()) {
+					int count = deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH);
+					deflated.write(buffer, 0, count);
+				}
+			}
+
+			if (finalBand) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					int count = deflater.deflate(buffer);
+					deflated.write(buffer, 0, count);
+				}
+			} else {
+				int count;
+				do {
+					count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+					deflated.write(buffer, 0, count);
+				} while (count == buffer.length);
+			}
+
+			return new Band(deflated.toByteArray(), adler.getValue(), length);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] header(int width, int height, boolean alpha) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(13);
+		try (DataOutputStream header = new DataOutputStream(bytes)) {
+			header.writeInt(width);
+			header.writeInt(height);
+			header.writeByte(8);
+			header.writeByte(alpha ? 6 : 2);
+			header.writeByte(0);
+			header.writeByte(0);
+			header.writeByte(0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data);
+
+		out.writeInt(data.length);
+		out.write(typeBytes);
+		out.write(data);
+		out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * Adler-32 of two concatenated blocks, from the checksum of each and the
+	 * length of the second (as zlib's adler32_combine).
+	 */
+	static long combineAdler32(long adler1, long adler2, long length2) {
+		long remainder = length2 % ADLER_BASE;
+		long sum1 = adler1 & 0xffff;
+		long sum2 = (remainder * sum1) % ADLER_BASE;
+		sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+		sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + ADLER_BASE - remainder;
+		if (sum1 >= ADLER_BASE) {
+			sum1 -= ADLER_BASE;
+		}
+		if (sum1 >= ADLER_BASE) {
+			sum1 -= ADLER_BASE;
+		}
+		if (sum2 >= (ADLER_BASE << 1)) {
+			sum2 -= (ADLER_BASE << 1);
+		}
+		if (sum2 >= ADLER_BASE) {
+			sum2 -= ADLER_BASE;
+		}
+		return sum1 | (sum2 << 16);
+	}
+
+	private static int ceilDiv(int x, int y) {
+		return -Math.floorDiv(-x, y);
+	}
+
+	private record Band(byte[] deflated, long adler, long length) {
+	}
+
+	/**
+	 * Produces filtered scanlines one at a time, choosing for each row the filter
+	 * with the smallest sum of absolute differences (the usual PNG heuristic).
+	 */
+	private static class RowFilter {
+		private final BufferedImage image;
+
+		private final int width;
+
+		private final int bytesPerPixel;
+
+		private final int rowBytes;
+
+		private final int[] argb;
+
+		private byte[] previous;
+
+		private byte[] current;
+
+		private final byte[][] candidates = new byte[5][];
+
+		private int nextRow;
+
+		RowFilter(BufferedImage image, int bytesPerPixel) {
+			this.image = image;
+			this.width = image.getWidth();
+			this.bytesPerPixel = bytesPerPixel;
+			this.rowBytes = width * bytesPerPixel;
+			this.argb = new int[width];
+			this.previous = new byte[rowBytes];
+			this.current = new byte[rowBytes];
+			for (int i = 0; i < candidates.length; i++) {
+				candidates[i] = new byte[rowBytes + 1];
+				candidates[i][0] = (byte) i;
+			}
+		}
+
+		int filteredRowBytes() {
+			return rowBytes + 1;
+		}
+
+		/**
+		 * Position on a row, loading the row above it for the Up, Average and Paeth
+		 * filters.
+		 */
+		void seek(int row) {
+			if (row == 0) {
+				Arrays.fill(previous, (byte) 0);
+			} else {
+				load(row - 1, previous);
+			}
+			nextRow = row;
+		}
+
+		/**
+		 * @return the next filtered row, including its leading filter type byte. The
+		 *         array is reused by the following call.
+		 */
+		byte[] next() {
+			load(nextRow++, current);
+
+			long best = Long.MAX_VALUE;
+			byte[] chosen = null;
+			for (int type = 0; type < candidates.length; type++) {
+				long sum = filter(type, candidates[type]);
+				if (sum < best) {
+					best = sum;
+					chosen = candidates[type];
+				}
+			}
+
+			byte[] swap = previous;
+			previous = current;
+			current = swap;
+			return chosen;
+		}
+
+		private long filter(int type, byte[] out) {
+			long sum = 0;
+			for (int i = 0; i < rowBytes; i++) {
+				int x = current[i] & 0xff;
+				int a = i >= bytesPerPixel ? current[i - bytesPerPixel] & 0xff : 0;
+				int b = previous[i] & 0xff;
+				int c = i >= bytesPerPixel ? previous[i - bytesPerPixel] & 0xff : 0;
+
+				int predicted = switch (type) {
+				case 1 -> a;
+				case 2 -> b;
+				case 3 -> (a + b) >>> 1;
+				case 4 -> paeth(a, b, c);
+				default -> 0;
+				};
+				byte value = (byte) (x - predicted);
+				out[i + 1] = value;
+				sum += Math.abs(value);
+			}
+			return sum;
+		}
+
+		private static int paeth(int a, int b, int c) {
+			int p = a + b - c;
+			int pa = Math.abs(p - a);
+			int pb = Math.abs(p - b);
+			int pc = Math.abs(p - c);
+			if (pa <= pb && pa <= pc) {
+				return a;
+			}
+			return pb <= pc ? b : c;
+		}
+
+		private void load(int row, byte[] into) {
+			image.getRGB(0, row, width, 1, argb, 0, width);
+			int i = 0;
+			for (int x = 0; x < width; x++) {
+				int pixel = argb[x];
+				into[i++] = (byte) (pixel >>> 16);
+				into[i++] = (byte) (pixel >>> 8);
+				into[i++] = (byte) pixel;
+				if (bytesPerPixel == 4) {
+					into[i++] = (byte) (pixel >>> 24);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,305 @@
+package com.bradyp.imgconverter.service.codec;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Converts images into a pixel format that the JPEG and BMP writers accept.
+ * 
+ * Those writers refuse images with alpha and 16-bit components. This class
+ * flattens alpha onto a background colour, expands indexed images to RGB and
+ * reduces 16-bit components to 8 bits, writing straight into the data buffer of
+ * a single output image. Common layouts are read directly from the source's
+ * data buffer; anything else is converted a tile of rows at a time through one
+ * reused buffer.
+ */
+public class PixelFormatNormalizer {
+	private static final int TILE_ROWS = 64;
+
+	private final int backgroundRed;
+
+	private final int backgroundGreen;
+
+	private final int backgroundBlue;
+
+	/**
+	 * @param background RGB colour that transparent pixels are flattened onto.
+	 */
+	public PixelFormatNormalizer(int background) {
+		this.backgroundRed = (background >>> 16) & 0xff;
+		this.backgroundGreen = (background >>> 8) & 0xff;
+		this.backgroundBlue = background & 0xff;
+	}
+
+	/**
+	 * Whether an image must be normalized before it can be written in a format.
+	 * 
+	 * @param image      The image to write.
+	 * @param formatName The target format.
+	 * @return true for JPEG and BMP targets when the image has alpha or more than
+	 *         8 bits per component.
+	 */
+	public static boolean needsNormalization(BufferedImage image, String formatName) {
+		if (!"jpg".equals(formatName) && !"bmp".equals(formatName)) {
+			return false;
+		}
+
+		ColorModel colorModel = image.getColorModel();
+		return colorModel.hasAlpha() || maxComponentSize(colorModel) > 8;
+	}
+
+	/**
+	 * Normalize an image to 8-bit opaque RGB, or 8-bit grey for opaque 16-bit grey
+	 * images.
+	 * 
+	 * @param image The image to normalize. It is not modified.
+	 * @return A new, normalized image.
+	 */
+	public BufferedImage normalize(BufferedImage image) {
+		ColorModel colorModel = image.getColorModel();
+		Raster raster = image.getRaster();
+		boolean untranslated = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+
+		if (untranslated && !colorModel.hasAlpha() && colorModel.getNumComponents() == 1
+				&& raster.getDataBuffer() instanceof DataBufferUShort) {
+			BufferedImage reduced = reduceGray(image);
+			if (reduced != null) {
+				return reduced;
+			}
+		}
+
+		BufferedImage output = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+		int[] target = ((DataBufferInt) output.getRaster().getDataBuffer()).getData();
+
+		boolean done = untranslated && (fromIndexed(image, target) || fromPackedInts(image, target)
+				|| fromInterleaved(image, target));
+		if (!done) {
+			fromRgbTiles(image, target);
+		}
+		return output;
+	}
+
+	/**
+	 * Indexed images: flatten the palette once, then look each pixel up.
+	 */
+	private boolean fromIndexed(BufferedImage image, int[] target) {
+		if (!(image.getColorModel() instanceof IndexColorModel palette)) {
+			return false;
+		}
+
+		int[] lookup = new int[1 << palette.getPixelSize()];
+		for (int i = 0; i < palette.getMapSize() && i < lookup.length; i++) {
+			lookup[i] = flatten(palette.getRGB(i));
+		}
+
+		Raster raster = image.getRaster();
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		if (raster.getDataBuffer() instanceof DataBufferByte buffer
+				&& raster.getSampleModel() instanceof ComponentSampleModel sampleModel
+				&& sampleModel.getPixelStride() == 1 && buffer.getNumBanks() == 1) {
+			byte[] data = buffer.getData();
+			int scanline = sampleModel.getScanlineStride();
+			int base = buffer.getOffset() + sampleModel.getBandOffsets()[0];
+			for (int y = 0; y < height; y++) {
+				int source = base + y * scanline;
+				int destination = y * width;
+				for (int x = 0; x < width; x++) {
+					target[destination + x] = lookup[data[source + x] & 0xff];
+				}
+			}
+			return true;
+		}
+
+		// Packed (1, 2 or 4 bit) pixels: unpack a tile of samples at a time.
+		int[] tile = new int[width * Math.min(TILE_ROWS, height)];
+		for (int y = 0; y < height; y += TILE_ROWS) {
+			int rows = Math.min(TILE_ROWS, height - y);
+			raster.getSamples(0, y, width, rows, 0, tile);
+			int destination = y * width;
+			for (int i = 0; i < width * rows; i++) {
+				target[destination + i] = lookup[tile[i] & (lookup.length - 1)];
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Pixels packed one to an int, as in TYPE_INT_ARGB and TYPE_INT_ARGB_PRE.
+	 */
+	private boolean fromPackedInts(BufferedImage image, int[] target) {
+		if (!(image.getColorModel() instanceof DirectColorModel colorModel)
+				|| !(image.getRaster().getDataBuffer() instanceof DataBufferInt buffer)
+				|| !(image.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel)
+				|| !colorModel.getColorSpace().isCS_sRGB() || colorModel.getRedMask() != 0x00ff0000
+				|| colorModel.getGreenMask() != 0x0000ff00 || colorModel.getBlueMask() != 0x000000ff
+				|| (colorModel.hasAlpha() && colorModel.getAlphaMask() != 0xff000000)) {
+			return false;
+		}
+
+		int[] data = buffer.getData();
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int scanline = sampleModel.getScanlineStride();
+		boolean alpha = colorModel.hasAlpha();
+		boolean premultiplied = colorModel.isAlphaPremultiplied();
+
+		for (int y = 0; y < height; y++) {
+			int source = buffer.getOffset() + y * scanline;
+			int destination = y * width;
+			for (int x = 0; x < width; x++) {
+				int pixel = data[source + x];
+				target[destination + x] = !alpha ? pixel & 0xffffff
+						: premultiplied ? flattenPremultiplied(pixel) : flatten(pixel);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Interleaved 8 or 16-bit RGB(A) components, as produced by the PNG reader and
+	 * in TYPE_4BYTE_ABGR.
+	 */
+	private boolean fromInterleaved(BufferedImage image, int[] target) {
+		ColorModel colorModel = image.getColorModel();
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+		SampleModel model = image.getRaster().getSampleModel();
+		if (!(colorModel instanceof ComponentColorModel) || !colorModel.getColorSpace().isCS_sRGB()
+				|| !(model instanceof ComponentSampleModel sampleModel) || buffer.getNumBanks() != 1
+				|| colorModel.getNumColorComponents() != 3
+				|| (!(buffer instanceof DataBufferByte) && !(buffer instanceof DataBufferUShort))) {
+			return false;
+		}
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int pixelStride = sampleModel.getPixelStride();
+		int scanline = sampleModel.getScanlineStride();
+		int[] offsets = sampleModel.getBandOffsets();
+		int red = buffer.getOffset() + offsets[0];
+		int green = buffer.getOffset() + offsets[1];
+		int blue = buffer.getOffset() + offsets[2];
+		int alpha = colorModel.hasAlpha() ? buffer.getOffset() + offsets[3] : -1;
+		boolean premultiplied = colorModel.isAlphaPremultiplied();
+
+		byte[] bytes = buffer instanceof DataBufferByte byteBuffer ? byteBuffer.getData() : null;
+		short[] shorts = buffer instanceof DataBufferUShort shortBuffer ? shortBuffer.getData() : null;
+
+		for (int y = 0; y < height; y++) {
+			int source = y * scanline;
+			int destination = y * width;
+			for (int x = 0; x < width; x++, source += pixelStride) {
+				int r, g, b, a;
+				if (bytes != null) {
+					r = bytes[red + source] & 0xff;
+					g = bytes[green + source] & 0xff;
+					b = bytes[blue + source] & 0xff;
+					a = alpha < 0 ? 0xff : bytes[alpha + source] & 0xff;
+				} else {
+					r = to8Bits(shorts[red + source]);
+					g = to8Bits(shorts[green + source]);
+					b = to8Bits(shorts[blue + source]);
+					a = alpha < 0 ? 0xff : to8Bits(shorts[alpha + source]);
+				}
+				int pixel = (a << 24) | (r << 16) | (g << 8) | b;
+				target[destination + x] = alpha < 0 ? pixel & 0xffffff
+						: premultiplied ? flattenPremultiplied(pixel) : flatten(pixel);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Anything else: let the colour model convert a tile of rows to sRGB.
+	 */
+	private void fromRgbTiles(BufferedImage image, int[] target) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] tile = new int[width * Math.min(TILE_ROWS, height)];
+
+		for (int y = 0; y < height; y += TILE_ROWS) {
+			int rows = Math.min(TILE_ROWS, height - y);
+			image.getRGB(0, y, width, rows, tile, 0, width);
+			int destination = y * width;
+			for (int i = 0; i < width * rows; i++) {
+				target[destination + i] = flatten(tile[i]);
+			}
+		}
+	}
+
+	/**
+	 * Opaque 16-bit grey to 8-bit grey, keeping the grey colour space.
+	 */
+	private BufferedImage reduceGray(BufferedImage image) {
+		Raster raster = image.getRaster();
+		if (!(raster.getSampleModel() instanceof ComponentSampleModel sampleModel)
+				|| !(image.getColorModel() instanceof ComponentColorModel)
+				|| image.getColorModel().getColorSpace() != ColorSpace.getInstance(ColorSpace.CS_GRAY)) {
+			return null;
+		}
+
+		DataBufferUShort buffer = (DataBufferUShort) raster.getDataBuffer();
+		short[] data = buffer.getData();
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int pixelStride = sampleModel.getPixelStride();
+		int scanline = sampleModel.getScanlineStride();
+		int base = buffer.getOffset() + sampleModel.getBandOffsets()[0];
+
+		BufferedImage output = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		byte[] target = ((DataBufferByte) output.getRaster().getDataBuffer()).getData();
+		for (int y = 0; y < height; y++) {
+			int source = base + y * scanline;
+			int destination = y * width;
+			for (int x = 0; x < width; x++, source += pixelStride) {
+				target[destination + x] = (byte) to8Bits(data[source]);
+			}
+		}
+		return output;
+	}
+
+	private int flatten(int argb) {
+		int a = argb >>> 24;
+		if (a == 0xff) {
+			return argb & 0xffffff;
+		}
+		int inverse = 0xff - a;
+		int r = ((argb >>> 16 & 0xff) * a + backgroundRed * inverse + 127) / 255;
+		int g = ((argb >>> 8 & 0xff) * a + backgroundGreen * inverse + 127) / 255;
+		int b = ((argb & 0xff) * a + backgroundBlue * inverse + 127) / 255;
+		return (r << 16) | (g << 8) | b;
+	}
+
+	private int flattenPremultiplied(int argb) {
+		int inverse = 0xff - (argb >>> 24);
+		int r = Math.min(0xff, (argb >>> 16 & 0xff) + (backgroundRed * inverse + 127) / 255);
+		int g = Math.min(0xff, (argb >>> 8 & 0xff) + (backgroundGreen * inverse + 127) / 255);
+		int b = Math.min(0xff, (argb & 0xff) + (backgroundBlue * inverse + 127) / 255);
+		return (r << 16) | (g << 8) | b;
+	}
+
+	private static int to8Bits(short sample) {
+		return ((sample & 0xffff) * 255 + 32767) / 65535;
+	}
+
+	private static int maxComponentSize(ColorModel colorModel) {
+		int max = 0;
+		for (int size : colorModel.getComponentSize()) {
+			max = Math.max(max, size);
+		}
+		return max;
+	}
+}
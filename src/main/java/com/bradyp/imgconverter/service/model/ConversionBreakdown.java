@@ -0,0 +1,10 @@
+package com.bradyp.imgconverter.service.model;
+
+import java.util.Map;
+
+/**
+ * Time spent in each stage of one recorded conversion, in milliseconds.
+ * Stages that did not run are left out.
+ */
+public record ConversionBreakdown(String key, String sourceFormat, String toFormat, int width, int height,
+		long inputBytes, long outputBytes, String thread, double totalMillis, Map<String, Double> stageMillis) {}
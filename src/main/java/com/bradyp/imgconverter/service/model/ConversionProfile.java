@@ -0,0 +1,10 @@
+package com.bradyp.imgconverter.service.model;
+
+import java.util.List;
+
+/**
+ * Result of a profiling recording: the slowest conversions with their stage
+ * breakdown, and totals for each stage over all events recorded.
+ */
+public record ConversionProfile(double durationMillis, long conversions, List<ConversionBreakdown> slowest,
+		List<StageSummary> stages) {}
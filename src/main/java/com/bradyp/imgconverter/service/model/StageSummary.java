@@ -0,0 +1,6 @@
+package com.bradyp.imgconverter.service.model;
+
+/**
+ * Totals for one conversion stage over a profiling recording.
+ */
+public record StageSummary(String stage, long count, double totalMillis, double maxMillis) {}
@@ -0,0 +1,30 @@
+package com.bradyp.imgconverter.service.profiling;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A whole conversion request, from routing it to the owning node to storing the
+ * result. A forwarded conversion ends when the owner answers.
+ */
+@Name(ConversionEvent.NAME)
+@Label("Image Conversion")
+public class ConversionEvent extends ImageConverterEvent {
+	public static final String NAME = "com.bradyp.imgconverter.Conversion";
+
+	@Label("Forwarded")
+	public boolean forwarded;
+
+	@Label("Cache Hit")
+	public boolean cacheHit;
+
+	@Label("Raster Cache Hit")
+	public boolean rasterCacheHit;
+
+	@Label("Pass-Through")
+	public boolean passThrough;
+
+	public ConversionEvent(String key, String toFormat) {
+		super(key, toFormat);
+	}
+}
@@ -0,0 +1,237 @@
+package com.bradyp.imgconverter.service.profiling;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.bradyp.imgconverter.service.model.ConversionBreakdown;
+import com.bradyp.imgconverter.service.model.ConversionProfile;
+import com.bradyp.imgconverter.service.model.StageSummary;
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
+
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Runs a time-boxed JDK Flight Recorder recording of the conversion events and
+ * breaks the slowest conversions down by stage.
+ * 
+ * Stage events are attributed to a conversion when they were emitted by the
+ * same thread, for the same key, within the conversion. The queue wait is the
+ * last one for the key that ended on that thread before the conversion began.
+ * Speculative rendition encodes and retrievals forwarded to another node run
+ * outside any conversion, so they only show in the stage totals.
+ * 
+ * Only one recording runs at a time. The events stay disabled, and cost next to
+ * nothing, when no recording is running.
+ */
+@Service
+public class ConversionProfiler {
+	public static final String QUEUE = "queue";
+
+	public static final String FORWARD = "forward";
+
+	public static final String FETCH = "fetch";
+
+	public static final String DECODE = "decode";
+
+	public static final String ENCODE = "encode";
+
+	public static final String SPECULATIVE_ENCODE = "speculativeEncode";
+
+	public static final String STORE = "store";
+
+	public static final String OTHER = "other";
+
+	private static final List<Class<? extends Event>> EVENT_TYPES = List.of(ConversionEvent.class, QueueEvent.class,
+			ForwardEvent.class, FetchEvent.class, DecodeEvent.class, EncodeEvent.class, StoreEvent.class);
+
+	private Logger logger = LoggerFactory.getLogger(ConversionProfiler.class);
+
+	private final ImageConverterProperties.Profiling properties;
+
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	@Autowired
+	public ConversionProfiler(ImageConverterProperties properties) {
+		this.properties = properties.getProfiling();
+	}
+
+	/**
+	 * Record conversions for a while and break the slowest down by stage. Blocks
+	 * for the duration of the recording.
+	 * 
+	 * @param duration How long to record, capped at the configured maximum.
+	 * @param limit    Number of slowest conversions to return.
+	 * @return The breakdown.
+	 * 
+	 * @throws IllegalStateException    Another recording is already running.
+	 * @throws IllegalArgumentException The duration is not positive.
+	 * @throws InterruptedException     Interrupted while recording.
+	 */
+	public ConversionProfile profile(Duration duration, int limit) throws InterruptedException {
+		if (duration.isNegative() || duration.isZero()) {
+			throw new IllegalArgumentException("Profiling duration must be positive");
+		}
+		if (duration.compareTo(properties.getMaxDuration()) > 0) {
+			duration = properties.getMaxDuration();
+		}
+
+		if (!running.compareAndSet(false, true)) {
+			throw new IllegalStateException("A profiling recording is already running");
+		}
+
+		try (Recording recording = new Recording()) {
+			recording.setName("imgconverter-conversions");
+			EVENT_TYPES.forEach(type -> recording.enable(type).withoutThreshold());
+
+			logger.info("Recording conversions for {}", duration);
+			recording.start();
+			try {
+				Thread.sleep(duration.toMillis());
+			} finally {
+				recording.stop();
+			}
+
+			Path file = Files.createTempFile("imgconverter-", ".jfr");
+			try {
+				recording.dump(file);
+				return analyse(RecordingFile.readAllEvents(file), duration, Math.max(0, limit));
+			} finally {
+				Files.deleteIfExists(file);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			running.set(false);
+		}
+	}
+
+	private ConversionProfile analyse(List<RecordedEvent> events, Duration duration, int limit) {
+		List<RecordedEvent> conversions = new ArrayList<>();
+		Map<Attribution, List<RecordedEvent>> stagesByAttribution = new HashMap<>();
+		Map<String, List<RecordedEvent>> eventsByStage = new LinkedHashMap<>();
+
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals(ConversionEvent.NAME)) {
+				conversions.add(event);
+				continue;
+			}
+
+			// Recordings share buffers, so events enabled by another one may show up
+			String stage = stage(event);
+			if (stage == null) {
+				continue;
+			}
+			eventsByStage.computeIfAbsent(stage, key -> new ArrayList<>()).add(event);
+			stagesByAttribution.computeIfAbsent(Attribution.of(event), key -> new ArrayList<>()).add(event);
+		}
+
+		List<ConversionBreakdown> slowest = conversions.stream()
+				.map(conversion -> breakdown(conversion,
+						stagesByAttribution.getOrDefault(Attribution.of(conversion), List.of())))
+				.sorted(Comparator.comparingDouble(ConversionBreakdown::totalMillis).reversed()).limit(limit)
+				.toList();
+
+		List<StageSummary> stages = eventsByStage.entrySet().stream()
+				.map(entry -> summary(entry.getKey(), entry.getValue()))
+				.sorted(Comparator.comparingDouble(StageSummary::totalMillis).reversed()).toList();
+
+		return new ConversionProfile(duration.toMillis(), conversions.size(), slowest, stages);
+	}
+
+	private ConversionBreakdown breakdown(RecordedEvent conversion, List<RecordedEvent> candidates) {
+		Instant start = conversion.getStartTime();
+		Instant end = conversion.getEndTime();
+
+		Map<String, Double> stageMillis = new LinkedHashMap<>();
+		RecordedEvent queue = null;
+		for (RecordedEvent event : candidates) {
+			String stage = stage(event);
+			if (QUEUE.equals(stage)) {
+				if (!event.getEndTime().isAfter(start)
+						&& (queue == null || event.getEndTime().isAfter(queue.getEndTime()))) {
+					queue = event;
+				}
+			} else if (!event.getStartTime().isBefore(start) && !event.getEndTime().isAfter(end)) {
+				stageMillis.merge(stage, millis(event.getDuration()), Double::sum);
+			}
+		}
+
+		double conversionMillis = millis(conversion.getDuration());
+		double staged = stageMillis.values().stream().mapToDouble(Double::doubleValue).sum();
+		stageMillis.put(OTHER, Math.max(0, conversionMillis - staged));
+
+		double totalMillis = conversionMillis;
+		if (queue != null) {
+			double queueMillis = millis(queue.getDuration());
+			stageMillis.put(QUEUE, queueMillis);
+			totalMillis += queueMillis;
+		}
+
+		RecordedThread thread = conversion.getThread();
+		return new ConversionBreakdown(conversion.getString("key"), conversion.getString("sourceFormat"),
+				conversion.getString("toFormat"), conversion.getInt("width"), conversion.getInt("height"),
+				conversion.getLong("inputBytes"), conversion.getLong("outputBytes"),
+				thread == null ? null : thread.getJavaName(), totalMillis, stageMillis);
+	}
+
+	private StageSummary summary(String stage, List<RecordedEvent> events) {
+		double total = 0;
+		double max = 0;
+		for (RecordedEvent event : events) {
+			double eventMillis = millis(event.getDuration());
+			total += eventMillis;
+			max = Math.max(max, eventMillis);
+		}
+		return new StageSummary(stage, events.size(), total, max);
+	}
+
+	/**
+	 * @return The stage an event belongs to, or null if it is not a stage event.
+	 */
+	private static String stage(RecordedEvent event) {
+		return switch (event.getEventType().getName()) {
+		case QueueEvent.NAME -> QUEUE;
+		case ForwardEvent.NAME -> FORWARD;
+		case FetchEvent.NAME -> FETCH;
+		case DecodeEvent.NAME -> DECODE;
+		case EncodeEvent.NAME -> event.getBoolean("speculative") ? SPECULATIVE_ENCODE : ENCODE;
+		case StoreEvent.NAME -> STORE;
+		default -> null;
+		};
+	}
+
+	private static double millis(Duration duration) {
+		return duration.toNanos() / 1_000_000.0;
+	}
+
+	/**
+	 * Thread and key an event was emitted for.
+	 */
+	private record Attribution(long threadId, String key) {
+		static Attribution of(RecordedEvent event) {
+			RecordedThread thread = event.getThread();
+			return new Attribution(thread == null ? -1 : thread.getJavaThreadId(),
+					Objects.toString(event.getString("key")));
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package com.bradyp.imgconverter.service.profiling;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Decoding the source image with ImageIO.
+ */
+@Name(DecodeEvent.NAME)
+@Label("Image Decode")
+public class DecodeEvent extends ImageConverterEvent {
+	public static final String NAME = "com.bradyp.imgconverter.Decode";
+
+	public DecodeEvent(String key, String toFormat) {
+		super(key, toFormat);
+	}
+}
@@ -0,0 +1,20 @@
+package com.bradyp.imgconverter.service.profiling;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Encoding a decoded image to the target format.
+ */
+@Name(EncodeEvent.NAME)
+@Label("Image Encode")
+public class EncodeEvent extends ImageConverterEvent {
+	public static final String NAME = "com.bradyp.imgconverter.Encode";
+
+	@Label("Speculative")
+	public boolean speculative;
+
+	public EncodeEvent(String key, String toFormat) {
+		super(key, toFormat);
+	}
+}
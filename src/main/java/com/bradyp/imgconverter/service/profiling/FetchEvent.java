@@ -0,0 +1,17 @@
+package com.bradyp.imgconverter.service.profiling;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Reading the source image from its URL.
+ */
+@Name(FetchEvent.NAME)
+@Label("Source Fetch")
+public class FetchEvent extends ImageConverterEvent {
+	public static final String NAME = "com.bradyp.imgconverter.Fetch";
+
+	public FetchEvent(String key, String toFormat) {
+		super(key, toFormat);
+	}
+}
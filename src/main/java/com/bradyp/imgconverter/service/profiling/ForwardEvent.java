@@ -0,0 +1,29 @@
+package com.bradyp.imgconverter.service.profiling;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Routing a conversion, or a retrieval, to another node of the cluster,
+ * including the wait for its answer.
+ */
+@Name(ForwardEvent.NAME)
+@Label("Cluster Forward")
+public class ForwardEvent extends ImageConverterEvent {
+	public static final String NAME = "com.bradyp.imgconverter.Forward";
+
+	@Label("Peer")
+	public String peer;
+
+	@Label("Operation")
+	public String operation;
+
+	@Label("Answered")
+	public boolean answered;
+
+	public ForwardEvent(String key, String toFormat, String peer, String operation) {
+		super(key, toFormat);
+		this.peer = peer;
+		this.operation = operation;
+	}
+}
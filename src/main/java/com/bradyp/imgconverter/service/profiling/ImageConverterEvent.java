@@ -0,0 +1,43 @@
+package com.bradyp.imgconverter.service.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base of the JDK Flight Recorder events emitted around each stage of an image
+ * conversion. Fields that do not apply to a stage are left at their defaults.
+ */
+@Category("Image Converter")
+@StackTrace(false)
+public abstract class ImageConverterEvent extends Event {
+	@Label("Key")
+	public String key;
+
+	@Label("Source Format")
+	public String sourceFormat;
+
+	@Label("Target Format")
+	public String toFormat;
+
+	@Label("Width")
+	public int width;
+
+	@Label("Height")
+	public int height;
+
+	@Label("Input Size")
+	@DataAmount
+	public long inputBytes;
+
+	@Label("Output Size")
+	@DataAmount
+	public long outputBytes;
+
+	protected ImageConverterEvent(String key, String toFormat) {
+		this.key = key;
+		this.toFormat = toFormat;
+	}
+}
@@ -0,0 +1,62 @@
+package com.bradyp.imgconverter.service.profiling;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Time a task spent queued on the conversion executor before a thread picked it
+ * up.
+ * 
+ * The event begins when the task is submitted and ends when it starts running.
+ * The task can describe the event while it runs, through
+ * {@link #describeCurrent}, and it is committed when the task finishes.
+ */
+@Name(QueueEvent.NAME)
+@Label("Executor Queue Wait")
+public class QueueEvent extends ImageConverterEvent {
+	public static final String NAME = "com.bradyp.imgconverter.Queue";
+
+	private static final ThreadLocal<QueueEvent> CURRENT = new ThreadLocal<>();
+
+	public QueueEvent() {
+		super(null, null);
+	}
+
+	/**
+	 * Wrap a task so the time it spends queued is recorded. Suitable as an
+	 * executor's task decorator.
+	 * 
+	 * @param task The submitted task.
+	 * @return The wrapped task.
+	 */
+	public static Runnable decorate(Runnable task) {
+		QueueEvent event = new QueueEvent();
+		event.begin();
+
+		return () -> {
+			event.end();
+			CURRENT.set(event);
+			try {
+				task.run();
+			} finally {
+				CURRENT.remove();
+				event.commit();
+			}
+		};
+	}
+
+	/**
+	 * Attach the conversion being run to the queue event of the current task, if
+	 * there is one.
+	 * 
+	 * @param key      The converted file name.
+	 * @param toFormat The target format.
+	 */
+	public static void describeCurrent(String key, String toFormat) {
+		QueueEvent event = CURRENT.get();
+		if (event != null) {
+			event.key = key;
+			event.toFormat = toFormat;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package com.bradyp.imgconverter.service.profiling;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Looking up or storing a converted image in the image store, including any
+ * wait for its lock.
+ */
+@Name(StoreEvent.NAME)
+@Label("Image Store Access")
+public class StoreEvent extends ImageConverterEvent {
+	public static final String NAME = "com.bradyp.imgconverter.Store";
+
+	@Label("Operation")
+	public String operation;
+
+	@Label("Hit")
+	public boolean hit;
+
+	public StoreEvent(String key, String toFormat, String operation) {
+		super(key, toFormat);
+		this.operation = operation;
+	}
+}
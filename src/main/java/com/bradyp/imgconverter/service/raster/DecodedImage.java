@@ -0,0 +1,8 @@
+package com.bradyp.imgconverter.service.raster;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A decoded source image, along with the format it was decoded from.
+ */
+public record DecodedImage(BufferedImage image, String format) {}
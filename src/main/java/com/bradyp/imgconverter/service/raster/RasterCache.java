@@ -0,0 +1,137 @@
+package com.bradyp.imgconverter.service.raster;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
+
+/**
+ * Short-lived cache of decoded source images, keyed by source URL.
+ * 
+ * Unlike the converted image cache, entries are weighed by the size of their
+ * pixel data and the cache has its own budget. Entries expire a fixed time
+ * after they are cached, and the least recently used are evicted first when the
+ * budget is exceeded. Cached images are shared between callers and must be
+ * treated as read-only.
+ */
+@Service
+public class RasterCache {
+	private final boolean enabled;
+
+	private final long maxBytes;
+
+	private final long timeToLiveNanos;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long currentBytes;
+
+	@Autowired
+	public RasterCache(ImageConverterProperties properties) {
+		ImageConverterProperties.RasterCache rasterCache = properties.getRasterCache();
+
+		this.enabled = rasterCache.isEnabled();
+		this.maxBytes = rasterCache.getMaxSize().toBytes();
+		this.timeToLiveNanos = rasterCache.getTimeToLive().toNanos();
+	}
+
+	/**
+	 * Look up a decoded source image.
+	 * 
+	 * @param sourceImageUrl URL of the source image.
+	 * @return The decoded image, or null if it is not cached or has expired.
+	 */
+	public synchronized DecodedImage get(URL sourceImageUrl) {
+		if (!enabled) {
+			return null;
+		}
+
+		String key = sourceImageUrl.toString();
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.isExpired(System.nanoTime())) {
+			remove(key);
+			return null;
+		}
+		return entry.decoded();
+	}
+
+	/**
+	 * Cache a decoded source image. Images larger than the whole budget are not
+	 * cached.
+	 * 
+	 * @param sourceImageUrl URL of the source image.
+	 * @param decoded        The decoded image.
+	 */
+	public synchronized void put(URL sourceImageUrl, DecodedImage decoded) {
+		if (!enabled || decoded == null) {
+			return;
+		}
+
+		long bytes = sizeOf(decoded.image());
+		if (bytes > maxBytes) {
+			return;
+		}
+
+		String key = sourceImageUrl.toString();
+		remove(key);
+		evictExpired();
+		while (currentBytes + bytes > maxBytes && !entries.isEmpty()) {
+			remove(entries.keySet().iterator().next());
+		}
+
+		entries.put(key, new Entry(decoded, bytes, System.nanoTime() + timeToLiveNanos));
+		currentBytes += bytes;
+	}
+
+	/**
+	 * @return The number of pixel bytes currently cached.
+	 */
+	public synchronized long getCurrentBytes() {
+		return currentBytes;
+	}
+
+	/**
+	 * Size of an image's pixel data, across all banks of its data buffer.
+	 */
+	static long sizeOf(BufferedImage image) {
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+		long elementBytes = Math.max(1, DataBuffer.getDataTypeSize(buffer.getDataType()) / 8);
+
+		return (long) buffer.getSize() * buffer.getNumBanks() * elementBytes;
+	}
+
+	private void evictExpired() {
+		long now = System.nanoTime();
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			if (entry.isExpired(now)) {
+				currentBytes -= entry.bytes();
+				iterator.remove();
+			}
+		}
+	}
+
+	private void remove(String key) {
+		Entry removed = entries.remove(key);
+		if (removed != null) {
+			currentBytes -= removed.bytes();
+		}
+	}
+
+	private record Entry(DecodedImage decoded, long bytes, long expiresAt) {
+		boolean isExpired(long now) {
+			return now - expiresAt >= 0;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.bradyp.imgconverter.service.rendition;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Precomputes the other renditions of a freshly decoded source in the
+ * background.
+ * 
+ * Work runs on a single low-priority thread and only while the node is idle:
+ * before each encode the scheduler checks the system CPU load, the conversion
+ * executor and the caller's own conversions in flight, and backs off while any
+ * of them is busy. Waiting sets hold on to their decoded raster, so the queue
+ * is small, the oldest set is dropped when it fills up and whatever is left of
+ * a set once it reaches the configured age is abandoned.
+ */
+@Service
+public class RenditionScheduler {
+	private static final long BACK_OFF_MILLIS = 100;
+
+	private Logger logger = LoggerFactory.getLogger(RenditionScheduler.class);
+
+	private final ImageConverterProperties.Renditions properties;
+
+	private final Executor taskExecutor;
+
+	private final ThreadPoolExecutor renditionExecutor;
+
+	@Autowired
+	public RenditionScheduler(ImageConverterProperties properties, @Qualifier("taskExecutor") Executor taskExecutor) {
+		this.properties = properties.getRenditions();
+		this.taskExecutor = taskExecutor;
+		this.renditionExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(Math.max(1, this.properties.getQueueCapacity())), runnable -> {
+					Thread thread = new Thread(runnable, "ImageConverter-rendition");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}, new ThreadPoolExecutor.DiscardOldestPolicy());
+	}
+
+	/**
+	 * Queue the remaining renditions of a source for speculative encoding.
+	 * 
+	 * @param fileName   The file that was just converted, used for logging.
+	 * @param formats    Candidate formats to precompute.
+	 * @param converting Reports whether conversions are running outside the
+	 *                   conversion executor, such as on request threads.
+	 * @param encoder    Encodes and stores one format. Must tolerate being called
+	 *                   for a format that has since been converted.
+	 */
+	public void schedule(String fileName, Collection<String> formats, BooleanSupplier converting,
+			Consumer<String> encoder) {
+		if (!properties.isEnabled()) {
+			return;
+		}
+
+		List<String> configured = properties.getFormats();
+		List<String> toPrecompute = formats.stream()
+				.filter(format -> configured.isEmpty() || configured.contains(format)).toList();
+		if (toPrecompute.isEmpty()) {
+			return;
+		}
+
+		long deadline = System.nanoTime() + properties.getMaxAge().toNanos();
+		renditionExecutor.execute(() -> precompute(fileName, toPrecompute, converting, encoder, deadline));
+	}
+
+	private void precompute(String fileName, List<String> formats, BooleanSupplier converting,
+			Consumer<String> encoder, long deadline) {
+		for (String format : formats) {
+			if (!awaitIdle(converting, deadline)) {
+				logger.debug("Abandoning renditions of {} at {}", fileName, format);
+				return;
+			}
+			try {
+				encoder.accept(format);
+			} catch (RuntimeException e) {
+				logger.debug("Could not precompute {} rendition of {}: {}", format, fileName, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Wait for the node to become idle.
+	 * 
+	 * @return false if the deadline passed, or the thread was interrupted, first.
+	 */
+	private boolean awaitIdle(BooleanSupplier converting, long deadline) {
+		while (converting.getAsBoolean() || isBusy()) {
+			if (System.nanoTime() > deadline) {
+				return false;
+			}
+			try {
+				Thread.sleep(BACK_OFF_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return System.nanoTime() <= deadline;
+	}
+
+	/**
+	 * The node is busy when conversions are queueing on the executor or the CPU
+	 * is loaded beyond the configured threshold.
+	 */
+	private boolean isBusy() {
+		if (taskExecutor instanceof ThreadPoolTaskExecutor pool
+				&& (pool.getQueueSize() > 0 || pool.getActiveCount() >= pool.getCorePoolSize())) {
+			return true;
+		}
+
+		if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+			double cpuLoad = os.getCpuLoad();
+			return cpuLoad >= 0 && cpuLoad > properties.getMaxCpuLoad();
+		}
+		return false;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		renditionExecutor.shutdownNow();
+	}
+}
@@ -0,0 +1,189 @@
+package com.bradyp.imgconverter.service.store;
+
+import java.util.LinkedHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.bradyp.imgconverter.service.ImageTooLargeException;
+import com.bradyp.imgconverter.service.buffer.BufferPool;
+import com.bradyp.imgconverter.service.buffer.ChunkedOutputStream;
+import com.bradyp.imgconverter.service.buffer.PooledBuffer;
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
+
+/**
+ * In-memory store of converted images.
+ * 
+ * Images are written into pooled chunks through {@link #newOutputStream()} and
+ * stored without a copy. When the store exceeds its budget the least recently
+ * used images are evicted, and their chunks go back to the pool once any reader
+ * still streaming them has finished.
+ * 
+ * Speculative renditions are kept apart, within a budget of their own, and are
+ * evicted before any image a user asked for. A rendition that is read is
+ * promoted to an ordinary image.
+ */
+@Service
+public class ImageStore {
+	private final long maxBytes;
+
+	private final long maxSpeculativeBytes;
+
+	private final BufferPool bufferPool;
+
+	private final LinkedHashMap<String, PooledBuffer> images = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final LinkedHashMap<String, PooledBuffer> speculative = new LinkedHashMap<>();
+
+	private long currentBytes;
+
+	private long speculativeBytes;
+
+	@Autowired
+	public ImageStore(ImageConverterProperties properties) {
+		this.maxBytes = properties.getStore().getMaxSize().toBytes();
+		this.maxSpeculativeBytes = Math.min(maxBytes, properties.getStore().getSpeculativeMaxSize().toBytes());
+		this.bufferPool = new BufferPool(properties.getStore().getPoolMaxSize().toBytes());
+	}
+
+	/**
+	 * Open a stream for writing an image into pooled chunks.
+	 * 
+	 * @return A new stream. Pass {@link ChunkedOutputStream#toBuffer()} to
+	 *         {@link #put}, or discard it.
+	 */
+	public ChunkedOutputStream newOutputStream() {
+		return bufferPool.newOutputStream();
+	}
+
+	public synchronized boolean contains(String fileName) {
+		return images.containsKey(fileName) || speculative.containsKey(fileName);
+	}
+
+	/**
+	 * Store an image, taking over the caller's reference to it.
+	 * 
+	 * @param fileName The image file name.
+	 * @param image    The image content.
+	 * 
+	 * @throws ImageTooLargeException The image is larger than the whole store.
+	 *                                It is released.
+	 */
+	public void put(String fileName, PooledBuffer image) {
+		if (image.size() > maxBytes) {
+			long size = image.size();
+			image.close();
+			throw new ImageTooLargeException(String.format(
+					"Converted image of %d bytes exceeds the store limit of %d bytes", size, maxBytes));
+		}
+
+		PooledBuffer replaced;
+		PooledBuffer replacedSpeculative;
+		synchronized (this) {
+			replacedSpeculative = removeSpeculative(fileName);
+			replaced = images.put(fileName, image);
+			currentBytes += image.size();
+			if (replaced != null) {
+				currentBytes -= replaced.size();
+			}
+		}
+
+		if (replaced != null) {
+			replaced.close();
+		}
+		if (replacedSpeculative != null) {
+			replacedSpeculative.close();
+		}
+		evict();
+	}
+
+	/**
+	 * Store a speculative rendition unless an image is already stored under the
+	 * name, or it does not fit the rendition budget. Either way, the caller's
+	 * reference is taken over.
+	 * 
+	 * @param fileName The image file name.
+	 * @param image    The image content.
+	 */
+	public void putSpeculative(String fileName, PooledBuffer image) {
+		boolean stored = false;
+		synchronized (this) {
+			if (image.size() <= maxSpeculativeBytes && !contains(fileName)) {
+				speculative.put(fileName, image);
+				speculativeBytes += image.size();
+				currentBytes += image.size();
+				stored = true;
+			}
+		}
+
+		if (!stored) {
+			image.close();
+		}
+		evict();
+	}
+
+	/**
+	 * Open a stored image for reading. The caller must close the returned buffer.
+	 * 
+	 * @param fileName The image file name.
+	 * @return The image, or null if it is not stored.
+	 */
+	public synchronized PooledBuffer open(String fileName) {
+		PooledBuffer image = images.get(fileName);
+		if (image == null) {
+			image = removeSpeculative(fileName);
+			if (image != null) {
+				// Someone asked for it, so it is kept like any other image
+				images.put(fileName, image);
+			}
+		}
+		return image != null && image.retain() ? image : null;
+	}
+
+	/**
+	 * @return Total size of the stored images, speculative renditions included.
+	 */
+	public synchronized long getCurrentBytes() {
+		return currentBytes;
+	}
+
+	/**
+	 * @return Size of the stored speculative renditions.
+	 */
+	public synchronized long getSpeculativeBytes() {
+		return speculativeBytes;
+	}
+
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Take a rendition out of the speculative budget, leaving it counted in the
+	 * store's total. Must hold the lock.
+	 */
+	private PooledBuffer removeSpeculative(String fileName) {
+		PooledBuffer image = speculative.remove(fileName);
+		if (image != null) {
+			speculativeBytes -= image.size();
+		}
+		return image;
+	}
+
+	private void evict() {
+		while (true) {
+			PooledBuffer evicted;
+			synchronized (this) {
+				if (speculativeBytes > maxSpeculativeBytes || (currentBytes > maxBytes && !speculative.isEmpty())) {
+					evicted = removeSpeculative(speculative.keySet().iterator().next());
+				} else if (currentBytes > maxBytes && !images.isEmpty()) {
+					evicted = images.remove(images.keySet().iterator().next());
+				} else {
+					return;
+				}
+				currentBytes -= evicted.size();
+			}
+			evicted.close();
+		}
+	}
+}
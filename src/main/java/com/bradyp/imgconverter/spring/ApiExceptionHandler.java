@@ -6,6 +6,8 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
+import com.bradyp.imgconverter.api.v1.model.UnsupportedFormatExceptionResponse;
+import com.bradyp.imgconverter.service.ImageTooLargeException;
 import com.bradyp.imgconverter.service.UnsupportedFormatException;
 
 @RestControllerAdvice
@@ -14,4 +16,19 @@ public class ApiExceptionHandler extends ResponseEntityExceptionHandler {
 	public ProblemDetail handle(UnsupportedFormatException e) {
 		return ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, e.getMessage());
 	}
+
+	@ExceptionHandler(ImageTooLargeException.class)
+	public ProblemDetail handle(ImageTooLargeException e) {
+		return ProblemDetail.forStatusAndDetail(HttpStatus.UNPROCESSABLE_ENTITY, e.getMessage());
+	}
+
+	/**
+	 * The cause carries the reason, which a peer forwarding the request passes
+	 * on to its client.
+	 */
+	@ExceptionHandler(UnsupportedFormatExceptionResponse.class)
+	public ProblemDetail handle(UnsupportedFormatExceptionResponse e) {
+		String detail = e.getCause() == null ? e.getMessage() : e.getCause().getMessage();
+		return ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, detail);
+	}
 }
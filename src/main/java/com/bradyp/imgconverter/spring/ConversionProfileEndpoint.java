@@ -0,0 +1,58 @@
+package com.bradyp.imgconverter.spring;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.bradyp.imgconverter.service.profiling.ConversionProfiler;
+
+/**
+ * Actuator endpoint that profiles conversions on this node.
+ * 
+ * Like other actuator endpoints it is not exposed over HTTP until listed in
+ * {@code management.endpoints.web.exposure.include}, and it follows the
+ * management port when one is configured, so it stays off the public API.
+ */
+@Component
+@Endpoint(id = "conversionprofile")
+public class ConversionProfileEndpoint {
+	private static final long DEFAULT_SECONDS = 30;
+
+	private static final int DEFAULT_LIMIT = 10;
+
+	private ConversionProfiler conversionProfiler;
+
+	@Autowired
+	public ConversionProfileEndpoint(ConversionProfiler conversionProfiler) {
+		this.conversionProfiler = conversionProfiler;
+	}
+
+	/**
+	 * Record conversions for a while and return the slowest, broken down by
+	 * stage. The response is sent once the recording ends.
+	 * 
+	 * @param seconds How long to record, 30 seconds if not given.
+	 * @param limit   Number of slowest conversions to return, 10 if not given.
+	 * @return The breakdown, or an error message.
+	 */
+	@WriteOperation
+	public WebEndpointResponse<Object> profile(@Nullable Long seconds, @Nullable Integer limit) {
+		try {
+			return new WebEndpointResponse<>(conversionProfiler.profile(
+					Duration.ofSeconds(seconds == null ? DEFAULT_SECONDS : seconds),
+					limit == null ? DEFAULT_LIMIT : limit));
+		} catch (IllegalArgumentException e) {
+			return new WebEndpointResponse<>(e.getMessage(), WebEndpointResponse.STATUS_BAD_REQUEST);
+		} catch (IllegalStateException e) {
+			return new WebEndpointResponse<>(e.getMessage(), WebEndpointResponse.STATUS_TOO_MANY_REQUESTS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new WebEndpointResponse<>(e.getMessage(), WebEndpointResponse.STATUS_SERVICE_UNAVAILABLE);
+		}
+	}
+}
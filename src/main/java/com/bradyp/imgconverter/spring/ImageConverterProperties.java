@@ -0,0 +1,504 @@
+package com.bradyp.imgconverter.spring;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Tunables for the image converter, bound from the {@code imgconverter.*}
+ * application properties.
+ */
+@ConfigurationProperties(prefix = "imgconverter")
+public class ImageConverterProperties {
+	private Store store = new Store();
+
+	private Cluster cluster = new Cluster();
+
+	private Renditions renditions = new Renditions();
+
+	private RasterCache rasterCache = new RasterCache();
+
+	private Png png = new Png();
+
+	private Normalization normalization = new Normalization();
+
+	private Warmup warmup = new Warmup();
+
+	private Profiling profiling = new Profiling();
+
+	public Store getStore() {
+		return store;
+	}
+
+	public void setStore(Store store) {
+		this.store = store;
+	}
+
+	public Cluster getCluster() {
+		return cluster;
+	}
+
+	public void setCluster(Cluster cluster) {
+		this.cluster = cluster;
+	}
+
+	public Renditions getRenditions() {
+		return renditions;
+	}
+
+	public void setRenditions(Renditions renditions) {
+		this.renditions = renditions;
+	}
+
+	public RasterCache getRasterCache() {
+		return rasterCache;
+	}
+
+	public void setRasterCache(RasterCache rasterCache) {
+		this.rasterCache = rasterCache;
+	}
+
+	public Png getPng() {
+		return png;
+	}
+
+	public void setPng(Png png) {
+		this.png = png;
+	}
+
+	public Normalization getNormalization() {
+		return normalization;
+	}
+
+	public void setNormalization(Normalization normalization) {
+		this.normalization = normalization;
+	}
+
+	public Warmup getWarmup() {
+		return warmup;
+	}
+
+	public void setWarmup(Warmup warmup) {
+		this.warmup = warmup;
+	}
+
+	public Profiling getProfiling() {
+		return profiling;
+	}
+
+	public void setProfiling(Profiling profiling) {
+		this.profiling = profiling;
+	}
+
+	/**
+	 * Store of converted images.
+	 */
+	public static class Store {
+		/**
+		 * Budget for converted images. The least recently used are evicted past it.
+		 */
+		private DataSize maxSize = DataSize.ofMegabytes(512);
+
+		/**
+		 * Part of the budget speculative renditions may use. They are evicted first
+		 * when the store is full.
+		 */
+		private DataSize speculativeMaxSize = DataSize.ofMegabytes(128);
+
+		/**
+		 * Most memory kept in free buffer chunks for reuse by later conversions.
+		 */
+		private DataSize poolMaxSize = DataSize.ofMegabytes(64);
+
+		public DataSize getMaxSize() {
+			return maxSize;
+		}
+
+		public void setMaxSize(DataSize maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		public DataSize getSpeculativeMaxSize() {
+			return speculativeMaxSize;
+		}
+
+		public void setSpeculativeMaxSize(DataSize speculativeMaxSize) {
+			this.speculativeMaxSize = speculativeMaxSize;
+		}
+
+		public DataSize getPoolMaxSize() {
+			return poolMaxSize;
+		}
+
+		public void setPoolMaxSize(DataSize poolMaxSize) {
+			this.poolMaxSize = poolMaxSize;
+		}
+	}
+
+	/**
+	 * Peer-aware mode. When enabled, each converted image is owned by exactly one
+	 * node, chosen from a consistent-hash ring over {@code self} and
+	 * {@code peers}.
+	 */
+	public static class Cluster {
+		private boolean enabled = false;
+
+		/**
+		 * Base URL under which the peers reach this node, e.g.
+		 * http://localhost:8080.
+		 */
+		private String self;
+
+		/**
+		 * Base URLs of the other nodes. May include {@code self}.
+		 */
+		private List<String> peers = new ArrayList<>();
+
+		/**
+		 * Number of points each node occupies on the ring. More points give a more
+		 * even key distribution.
+		 */
+		private int virtualNodes = 128;
+
+		private Duration connectTimeout = Duration.ofSeconds(1);
+
+		private Duration readTimeout = Duration.ofSeconds(30);
+
+		/**
+		 * How often unreachable peers are probed before being put back on the ring.
+		 */
+		private Duration probeInterval = Duration.ofSeconds(10);
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getSelf() {
+			return self;
+		}
+
+		public void setSelf(String self) {
+			this.self = self;
+		}
+
+		public List<String> getPeers() {
+			return peers;
+		}
+
+		public void setPeers(List<String> peers) {
+			this.peers = peers;
+		}
+
+		public int getVirtualNodes() {
+			return virtualNodes;
+		}
+
+		public void setVirtualNodes(int virtualNodes) {
+			this.virtualNodes = virtualNodes;
+		}
+
+		public Duration getConnectTimeout() {
+			return connectTimeout;
+		}
+
+		public void setConnectTimeout(Duration connectTimeout) {
+			this.connectTimeout = connectTimeout;
+		}
+
+		public Duration getReadTimeout() {
+			return readTimeout;
+		}
+
+		public void setReadTimeout(Duration readTimeout) {
+			this.readTimeout = readTimeout;
+		}
+
+		public Duration getProbeInterval() {
+			return probeInterval;
+		}
+
+		public void setProbeInterval(Duration probeInterval) {
+			this.probeInterval = probeInterval;
+		}
+	}
+
+	/**
+	 * Rendition set policy. After a source is decoded for one format, the other
+	 * formats are encoded speculatively in the background while the CPU is idle,
+	 * so follow-up requests for them are cache hits.
+	 */
+	public static class Renditions {
+		private boolean enabled = true;
+
+		/**
+		 * Formats to precompute. Empty means every supported format.
+		 */
+		private List<String> formats = new ArrayList<>();
+
+		/**
+		 * Number of decoded sources that may wait for precomputation. When full,
+		 * the oldest waiting source is dropped.
+		 */
+		private int queueCapacity = 4;
+
+		/**
+		 * How long a decoded source is kept waiting before it is dropped.
+		 */
+		private Duration maxAge = Duration.ofSeconds(5);
+
+		/**
+		 * System CPU load (0.0 - 1.0) above which speculative work is cancelled.
+		 */
+		private double maxCpuLoad = 0.75;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public List<String> getFormats() {
+			return formats;
+		}
+
+		public void setFormats(List<String> formats) {
+			this.formats = formats;
+		}
+
+		public int getQueueCapacity() {
+			return queueCapacity;
+		}
+
+		public void setQueueCapacity(int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+		}
+
+		public Duration getMaxAge() {
+			return maxAge;
+		}
+
+		public void setMaxAge(Duration maxAge) {
+			this.maxAge = maxAge;
+		}
+
+		public double getMaxCpuLoad() {
+			return maxCpuLoad;
+		}
+
+		public void setMaxCpuLoad(double maxCpuLoad) {
+			this.maxCpuLoad = maxCpuLoad;
+		}
+	}
+
+	/**
+	 * Short-lived cache of decoded source images, so new encodes of a recently
+	 * seen source skip the fetch and decode.
+	 */
+	public static class RasterCache {
+		private boolean enabled = true;
+
+		/**
+		 * Budget for the pixel data of all cached images.
+		 */
+		private DataSize maxSize = DataSize.ofMegabytes(256);
+
+		/**
+		 * How long a decoded image is kept after it was cached.
+		 */
+		private Duration timeToLive = Duration.ofSeconds(60);
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public DataSize getMaxSize() {
+			return maxSize;
+		}
+
+		public void setMaxSize(DataSize maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		public Duration getTimeToLive() {
+			return timeToLive;
+		}
+
+		public void setTimeToLive(Duration timeToLive) {
+			this.timeToLive = timeToLive;
+		}
+	}
+
+	/**
+	 * PNG encoding. Images of at least {@code parallelThreshold} pixels are
+	 * filtered and deflated on several cores; smaller ones go through ImageIO.
+	 */
+	public static class Png {
+		private boolean parallel = true;
+
+		private long parallelThreshold = 1_000_000;
+
+		/**
+		 * Threads used for parallel encoding. Zero or less means one per available
+		 * processor.
+		 */
+		private int parallelism = 0;
+
+		/**
+		 * Deflate level, 0-9, or -1 for the zlib default.
+		 */
+		private int compressionLevel = -1;
+
+		public boolean isParallel() {
+			return parallel;
+		}
+
+		public void setParallel(boolean parallel) {
+			this.parallel = parallel;
+		}
+
+		public long getParallelThreshold() {
+			return parallelThreshold;
+		}
+
+		public void setParallelThreshold(long parallelThreshold) {
+			this.parallelThreshold = parallelThreshold;
+		}
+
+		public int getParallelism() {
+			return parallelism;
+		}
+
+		public void setParallelism(int parallelism) {
+			this.parallelism = parallelism;
+		}
+
+		public int getCompressionLevel() {
+			return compressionLevel;
+		}
+
+		public void setCompressionLevel(int compressionLevel) {
+			this.compressionLevel = compressionLevel;
+		}
+	}
+
+	/**
+	 * Pixel format normalization for targets that cannot store alpha.
+	 */
+	public static class Normalization {
+		/**
+		 * Colour that transparent pixels are flattened onto, e.g. #FFFFFF.
+		 */
+		private String background = "#FFFFFF";
+
+		public String getBackground() {
+			return background;
+		}
+
+		public void setBackground(String background) {
+			this.background = background;
+		}
+	}
+
+	/**
+	 * Startup warm-up. Synthetic conversions between every pair of supported
+	 * formats are run before the application reports ready, so the codecs are
+	 * loaded and compiled before real traffic arrives.
+	 */
+	public static class Warmup {
+		private boolean enabled = true;
+
+		/**
+		 * Conversions run for each pair of formats.
+		 */
+		private int iterations = 10;
+
+		/**
+		 * Width and height of the synthetic image.
+		 */
+		private int imageSize = 256;
+
+		/**
+		 * Conversions of an image above the PNG parallel threshold, which warm up
+		 * the parallel PNG encoder.
+		 */
+		private int parallelPngIterations = 3;
+
+		/**
+		 * Exit once the application is ready. Set by the CDS training run of the
+		 * fast-startup build.
+		 */
+		private boolean exitWhenReady = false;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getIterations() {
+			return iterations;
+		}
+
+		public void setIterations(int iterations) {
+			this.iterations = iterations;
+		}
+
+		public int getImageSize() {
+			return imageSize;
+		}
+
+		public void setImageSize(int imageSize) {
+			this.imageSize = imageSize;
+		}
+
+		public int getParallelPngIterations() {
+			return parallelPngIterations;
+		}
+
+		public void setParallelPngIterations(int parallelPngIterations) {
+			this.parallelPngIterations = parallelPngIterations;
+		}
+
+		public boolean isExitWhenReady() {
+			return exitWhenReady;
+		}
+
+		public void setExitWhenReady(boolean exitWhenReady) {
+			this.exitWhenReady = exitWhenReady;
+		}
+	}
+
+	/**
+	 * On-demand conversion profiling with JDK Flight Recorder, through the
+	 * conversionprofile actuator endpoint.
+	 */
+	public static class Profiling {
+		/**
+		 * Longest recording the profiling endpoint will run.
+		 */
+		private Duration maxDuration = Duration.ofMinutes(1);
+
+		public Duration getMaxDuration() {
+			return maxDuration;
+		}
+
+		public void setMaxDuration(Duration maxDuration) {
+			this.maxDuration = maxDuration;
+		}
+	}
+}
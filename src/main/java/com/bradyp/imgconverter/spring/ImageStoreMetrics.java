@@ -0,0 +1,46 @@
+package com.bradyp.imgconverter.spring;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.bradyp.imgconverter.service.buffer.BufferPool;
+import com.bradyp.imgconverter.service.store.ImageStore;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the image store and its buffer pool to Micrometer, so the share of
+ * buffer bytes served from the pool rather than newly allocated can be watched
+ * on /actuator/metrics.
+ */
+@Component
+public class ImageStoreMetrics implements MeterBinder {
+	private final ImageStore imageStore;
+
+	@Autowired
+	public ImageStoreMetrics(ImageStore imageStore) {
+		this.imageStore = imageStore;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		BufferPool bufferPool = imageStore.getBufferPool();
+
+		FunctionCounter.builder("imgconverter.buffer.pool.allocated", bufferPool, BufferPool::getAllocatedBytes)
+				.description("Bytes of buffer chunks newly allocated").baseUnit(BaseUnits.BYTES).register(registry);
+		FunctionCounter.builder("imgconverter.buffer.pool.reused", bufferPool, BufferPool::getReusedBytes)
+				.description("Bytes of buffer chunks served from the pool").baseUnit(BaseUnits.BYTES)
+				.register(registry);
+		Gauge.builder("imgconverter.buffer.pool.pooled", bufferPool, BufferPool::getPooledBytes)
+				.description("Bytes held in free chunks").baseUnit(BaseUnits.BYTES).register(registry);
+
+		Gauge.builder("imgconverter.store.size", imageStore, ImageStore::getCurrentBytes)
+				.description("Bytes of converted images stored").baseUnit(BaseUnits.BYTES).register(registry);
+		Gauge.builder("imgconverter.store.speculative.size", imageStore, ImageStore::getSpeculativeBytes)
+				.description("Bytes of speculative renditions stored").baseUnit(BaseUnits.BYTES).register(registry);
+	}
+}
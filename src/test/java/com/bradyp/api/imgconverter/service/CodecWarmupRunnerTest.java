@@ -0,0 +1,94 @@
+package com.bradyp.api.imgconverter.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import java.net.URL;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Mockito;
+
+import com.bradyp.imgconverter.service.CodecWarmupRunner;
+import com.bradyp.imgconverter.service.EventPublisherService;
+import com.bradyp.imgconverter.service.ImageConverterService;
+import com.bradyp.imgconverter.service.cluster.ClusterRouter;
+import com.bradyp.imgconverter.service.codec.ImageEncoder;
+import com.bradyp.imgconverter.service.raster.RasterCache;
+import com.bradyp.imgconverter.service.rendition.RenditionScheduler;
+import com.bradyp.imgconverter.service.store.ImageStore;
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
+
+/**
+ * Test scenarios for {@link CodecWarmupRunner}.
+ *
+ * The warm-up runs against a real {@link ImageConverterService}, with the store
+ * and the raster cache watched to show the warm-up leaves them alone.
+ */
+public class CodecWarmupRunnerTest {
+	private static final int IMAGE_SIZE = 16;
+
+	private static final int PARALLEL_PNG_SIDE = 64;
+
+	@DisplayName("Test every pair of formats is warmed up without storing or caching anything")
+	@Test
+	public void whenRunThenEveryPairConvertedAndNothingStored() {
+		ImageConverterProperties properties = new ImageConverterProperties();
+		properties.getWarmup().setIterations(2);
+		properties.getWarmup().setImageSize(IMAGE_SIZE);
+		properties.getWarmup().setParallelPngIterations(1);
+		properties.getPng().setParallelThreshold((long) PARALLEL_PNG_SIDE * PARALLEL_PNG_SIDE);
+
+		RasterCache rasterCache = Mockito.mock(RasterCache.class);
+		RenditionScheduler renditionScheduler = Mockito.mock(RenditionScheduler.class);
+		ImageEncoder imageEncoder = new ImageEncoder(properties);
+		ImageStore imageStore = spy(new ImageStore(properties));
+		ImageConverterService service = spy(new ImageConverterService(Mockito.mock(EventPublisherService.class),
+				Mockito.mock(ClusterRouter.class), renditionScheduler, rasterCache, imageEncoder, imageStore));
+
+		try {
+			new CodecWarmupRunner(properties, service, imageEncoder).run(null);
+		} finally {
+			imageEncoder.shutdown();
+		}
+
+		for (String fromFormat : service.getSupportedFormats()) {
+			for (String toFormat : service.getSupportedFormats()) {
+				if (!fromFormat.equals(toFormat)) {
+					verify(service, times(2)).warmUp(argThat(source(IMAGE_SIZE, fromFormat)), eq(toFormat));
+				}
+			}
+		}
+		verify(service).warmUp(argThat(source(PARALLEL_PNG_SIDE, "bmp")), eq("png"));
+
+		verifyNoInteractions(rasterCache, renditionScheduler);
+		verify(imageStore, never()).put(anyString(), any());
+		verify(imageStore, never()).putSpeculative(anyString(), any());
+		assertThat(imageStore.getCurrentBytes()).isZero();
+	}
+
+	@DisplayName("Test nothing is converted when the warm-up is disabled")
+	@Test
+	public void whenDisabledThenNothingConverted() {
+		ImageConverterProperties properties = new ImageConverterProperties();
+		properties.getWarmup().setEnabled(false);
+		ImageConverterService service = Mockito.mock(ImageConverterService.class);
+
+		new CodecWarmupRunner(properties, service, new ImageEncoder(properties)).run(null);
+
+		verifyNoInteractions(service);
+	}
+
+	private ArgumentMatcher<URL> source(int size, String format) {
+		return url -> url != null && url.getPath().endsWith(String.format("/source-%dx%d.%s", size, size, format));
+	}
+}
@@ -3,7 +3,11 @@ package com.bradyp.api.imgconverter.service;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
@@ -12,6 +16,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 
@@ -23,12 +38,19 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import com.bradyp.imgconverter.service.EventPublisherService;
 import com.bradyp.imgconverter.service.ImageConverterService;
 import com.bradyp.imgconverter.service.UnsupportedFormatException;
+import com.bradyp.imgconverter.service.cluster.ClusterRouter;
+import com.bradyp.imgconverter.service.codec.ImageEncoder;
 import com.bradyp.imgconverter.service.model.ImageConversionResult;
+import com.bradyp.imgconverter.service.raster.RasterCache;
+import com.bradyp.imgconverter.service.rendition.RenditionScheduler;
+import com.bradyp.imgconverter.service.store.ImageStore;
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
 
 /**
  * Test scenarios for {@link ImageConverterService}.
@@ -41,6 +63,21 @@ public class ImageConverterServiceTest {
 	@Mock
 	private EventPublisherService eventPublisherService;
 
+	@Mock
+	private ClusterRouter clusterRouter;
+
+	@Mock
+	private RenditionScheduler renditionScheduler;
+
+	@Mock
+	private RasterCache rasterCache;
+
+	@Spy
+	private ImageEncoder imageEncoder = new ImageEncoder(new ImageConverterProperties());
+
+	@Spy
+	private ImageStore imageStore = new ImageStore(new ImageConverterProperties());
+
 	@InjectMocks
 	private ImageConverterService cut;
 
@@ -57,7 +94,7 @@ public class ImageConverterServiceTest {
 		String convertedFileName = cut.convert(fileToConvert, "jpg");
 		byte[] actualImageBytes = cut.get(convertedFileName);
 
-		assertThat(convertedFileName).isEqualTo(String.format("%s.jpg", fileToConvert.hashCode()));
+		assertThat(convertedFileName).isEqualTo(String.format("%s.jpg", sourceKey(fileToConvert)));
 		assertImagesEqual(expectedImage, actualImageBytes);
 	}
 
@@ -71,7 +108,7 @@ public class ImageConverterServiceTest {
 		String convertedFileName = cut.convert(fileToConvert, "png");
 		byte[] actualImageBytes = cut.get(convertedFileName);
 
-		assertThat(convertedFileName).isEqualTo(String.format("%s.png", fileToConvert.hashCode()));
+		assertThat(convertedFileName).isEqualTo(String.format("%s.png", sourceKey(fileToConvert)));
 		assertImagesEqual(expectedImage, actualImageBytes);
 	}
 
@@ -85,7 +122,7 @@ public class ImageConverterServiceTest {
 		String convertedFileName = cut.convert(fileToConvert, "bmp");
 		byte[] actualImageBytes = cut.get(convertedFileName);
 
-		assertThat(convertedFileName).isEqualTo(String.format("%s.bmp", fileToConvert.hashCode()));
+		assertThat(convertedFileName).isEqualTo(String.format("%s.bmp", sourceKey(fileToConvert)));
 		assertImagesEqual(expectedImage, actualImageBytes);
 	}
 
@@ -99,7 +136,7 @@ public class ImageConverterServiceTest {
 		String convertedFileName = cut.convert(fileToConvert, "gif");
 		byte[] actualImageBytes = cut.get(convertedFileName);
 
-		assertThat(convertedFileName).isEqualTo(String.format("%s.gif", fileToConvert.hashCode()));
+		assertThat(convertedFileName).isEqualTo(String.format("%s.gif", sourceKey(fileToConvert)));
 		assertImagesEqual(expectedImage, actualImageBytes);
 	}
 
@@ -113,7 +150,7 @@ public class ImageConverterServiceTest {
 		String convertedFileName = cut.convert(fileToConvert, "png");
 		byte[] actualImageBytes = cut.get(convertedFileName);
 
-		assertThat(convertedFileName).isEqualTo(String.format("%s.png", fileToConvert.hashCode()));
+		assertThat(convertedFileName).isEqualTo(String.format("%s.png", sourceKey(fileToConvert)));
 		assertImagesEqual(expectedImage, actualImageBytes);
 	}
 
@@ -127,7 +164,7 @@ public class ImageConverterServiceTest {
 		String convertedFileName = cut.convert(fileToConvert, "bmp");
 		byte[] actualImageBytes = cut.get(convertedFileName);
 
-		assertThat(convertedFileName).isEqualTo(String.format("%s.bmp", fileToConvert.hashCode()));
+		assertThat(convertedFileName).isEqualTo(String.format("%s.bmp", sourceKey(fileToConvert)));
 		assertImagesEqual(expectedImage, actualImageBytes);
 	}
 
@@ -141,7 +178,7 @@ public class ImageConverterServiceTest {
 		String convertedFileName = cut.convert(fileToConvert, "gif");
 		byte[] actualImageBytes = cut.get(convertedFileName);
 
-		assertThat(convertedFileName).isEqualTo(String.format("%s.gif", fileToConvert.hashCode()));
+		assertThat(convertedFileName).isEqualTo(String.format("%s.gif", sourceKey(fileToConvert)));
 		assertImagesEqual(expectedImage, actualImageBytes);
 	}
 
@@ -155,7 +192,7 @@ public class ImageConverterServiceTest {
 		String convertedFileName = cut.convert(fileToConvert, "png");
 		byte[] actualImageBytes = cut.get(convertedFileName);
 
-		assertThat(convertedFileName).isEqualTo(String.format("%s.png", fileToConvert.hashCode()));
+		assertThat(convertedFileName).isEqualTo(String.format("%s.png", sourceKey(fileToConvert)));
 		assertImagesEqual(expectedImage, actualImageBytes);
 	}
 
@@ -169,7 +206,7 @@ public class ImageConverterServiceTest {
 		String convertedFileName = cut.convert(fileToConvert, "jpg");
 		byte[] actualImageBytes = cut.get(convertedFileName);
 
-		assertThat(convertedFileName).isEqualTo(String.format("%s.jpg", fileToConvert.hashCode()));
+		assertThat(convertedFileName).isEqualTo(String.format("%s.jpg", sourceKey(fileToConvert)));
 		assertImagesEqual(expectedImage, actualImageBytes);
 	}
 
@@ -182,6 +219,104 @@ public class ImageConverterServiceTest {
 		});
 	}
 
+	@DisplayName("Test conversion to the source format keeps the original bytes")
+	@Test
+	public void whenConvertToSameFormatThenOriginalBytesKept() throws IOException {
+		URL fileToConvert = getImageUrl("for-png-tests", "png-test.png");
+
+		String convertedFileName = cut.convert(fileToConvert, "png");
+		byte[] actualImageBytes = cut.get(convertedFileName);
+
+		assertThat(convertedFileName).isEqualTo(String.format("%s.png", sourceKey(fileToConvert)));
+		try (InputStream openStream = fileToConvert.openStream()) {
+			assertThat(actualImageBytes).isEqualTo(openStream.readAllBytes());
+		}
+	}
+
+	@DisplayName("Test Unsupported Source Format")
+	@Test
+	public void whenConvertUnsupportedSourceThenUnsupportedFormatException() {
+		URL fileToConvert = getImageUrl("for-unsupported-tests", "not-an-image.txt");
+		assertThrows(UnsupportedFormatException.class, () -> {
+			cut.convert(fileToConvert, "png");
+		});
+	}
+
+	@DisplayName("Test conversion owned by a peer returns the name the peer stored it under")
+	@Test
+	public void whenConvertOwnedByPeerThenPeerFileNameReturned() {
+		URL fileToConvert = getImageUrl("for-gif-tests", "gif-test.gif");
+		when(clusterRouter.remoteOwner(anyString())).thenReturn(Optional.of("http://peer:8080"));
+		when(clusterRouter.forwardConvert("http://peer:8080", fileToConvert, "png"))
+				.thenReturn(Optional.of("stored-by-peer.png"));
+
+		String convertedFileName = cut.convert(fileToConvert, "png");
+
+		assertThat(convertedFileName).isEqualTo("stored-by-peer.png");
+		assertThat(imageStore.contains(cut.buildFilename(fileToConvert, "png"))).isFalse();
+	}
+
+	@DisplayName("Test a second format of a recently decoded source is encoded without reopening the source")
+	@Test
+	public void whenSourceDecodedRecentlyThenRasterCacheHitWithoutFetch() {
+		ImageConverterService service = new ImageConverterService(eventPublisherService, clusterRouter,
+				renditionScheduler, new RasterCache(new ImageConverterProperties()), imageEncoder, imageStore);
+		AtomicInteger opens = new AtomicInteger();
+		URL fileToConvert = countingOpens(getImageUrl("for-gif-tests", "gif-test.gif"), opens);
+		BufferedImage expectedImage = loadImage(getImageUrl("for-gif-tests", "png.png"));
+
+		service.convert(fileToConvert, "jpg");
+		String convertedFileName = service.convert(fileToConvert, "png");
+
+		assertThat(opens.get()).isEqualTo(1);
+		assertThat(convertedFileName).isEqualTo(String.format("%s.png", sourceKey(fileToConvert)));
+		assertImagesEqual(expectedImage, service.get(convertedFileName));
+	}
+
+	@DisplayName("Test conversion to the source format keeps the original bytes when the source is in the raster cache")
+	@Test
+	public void whenSourceDecodedRecentlyAndSameFormatThenOriginalBytesKept() throws IOException {
+		ImageConverterService service = new ImageConverterService(eventPublisherService, clusterRouter,
+				renditionScheduler, new RasterCache(new ImageConverterProperties()), imageEncoder, imageStore);
+		URL fileToConvert = getImageUrl("for-gif-tests", "gif-test.gif");
+
+		service.convert(fileToConvert, "jpg");
+		String convertedFileName = service.convert(fileToConvert, "gif");
+		byte[] actualImageBytes = service.get(convertedFileName);
+
+		assertThat(convertedFileName).isEqualTo(String.format("%s.gif", sourceKey(fileToConvert)));
+		try (InputStream openStream = fileToConvert.openStream()) {
+			assertThat(actualImageBytes).isEqualTo(openStream.readAllBytes());
+		}
+	}
+
+	@DisplayName("Test a rendition precomputed in the background is a store hit")
+	@Test
+	public void whenRenditionPrecomputedThenStoreHitWithoutFetch() throws InterruptedException {
+		ImageConverterProperties properties = new ImageConverterProperties();
+		// Only the conversions decide whether the node is busy
+		properties.getRenditions().setMaxCpuLoad(1.0);
+		RenditionScheduler scheduler = new RenditionScheduler(properties, Runnable::run);
+		ImageConverterService service = new ImageConverterService(eventPublisherService, clusterRouter, scheduler,
+				rasterCache, imageEncoder, imageStore);
+		AtomicInteger opens = new AtomicInteger();
+		URL fileToConvert = countingOpens(getImageUrl("for-gif-tests", "gif-test.gif"), opens);
+		BufferedImage expectedImage = loadImage(getImageUrl("for-gif-tests", "png.png"));
+
+		try {
+			service.convert(fileToConvert, "jpg");
+			drain(scheduler);
+
+			String convertedFileName = service.convert(fileToConvert, "png");
+
+			verify(imageStore).putSpeculative(eq(convertedFileName), any());
+			assertThat(opens.get()).isEqualTo(1);
+			assertImagesEqual(expectedImage, service.get(convertedFileName));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
 	@DisplayName("Test convert async happy path")
 	@Test
 	public void whenConvertAsyncThenSuccess() {
@@ -194,7 +329,7 @@ public class ImageConverterServiceTest {
 		verify(eventPublisherService).publish(asyncResultCaptor.capture());
 		ImageConversionResult conversionResult = asyncResultCaptor.getValue();
 		assertThat(conversionResult.isSuccess());
-		assertThat(conversionResult.getFileName()).isEqualTo(String.format("%s.jpg", fileToConvert.hashCode()));
+		assertThat(conversionResult.getFileName()).isEqualTo(String.format("%s.jpg", sourceKey(fileToConvert)));
 		assertImagesEqual(expectedImage, conversionResult.getContent());
 	}
 
@@ -257,6 +392,43 @@ public class ImageConverterServiceTest {
 		}
 	}
 
+	private String sourceKey(URL sourceImageUrl) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256")
+					.digest(sourceImageUrl.toExternalForm().getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Wait for every set scheduled so far to run, by scheduling a marker set
+	 * behind them.
+	 */
+	private void drain(RenditionScheduler scheduler) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		scheduler.schedule("marker.jpg", List.of("png"), () -> false, format -> done.countDown());
+		assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+	}
+
+	/**
+	 * The same URL, counting how often it is opened.
+	 */
+	private URL countingOpens(URL url, AtomicInteger opens) {
+		try {
+			return new URL(null, url.toExternalForm(), new URLStreamHandler() {
+				@Override
+				protected URLConnection openConnection(URL u) throws IOException {
+					opens.incrementAndGet();
+					return url.openConnection();
+				}
+			});
+		} catch (MalformedURLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	private URL getImageUrl(String subdir, String fileName) {
 		File file = new File(String.format("src/test/resources/%s/%s", subdir, fileName));
 
@@ -0,0 +1,119 @@
+package com.bradyp.api.imgconverter.service.buffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.bradyp.imgconverter.service.buffer.BufferPool;
+import com.bradyp.imgconverter.service.buffer.ChunkedOutputStream;
+import com.bradyp.imgconverter.service.buffer.PooledBuffer;
+
+/**
+ * Test scenarios for {@link BufferPool} and the streams and buffers built on
+ * it.
+ */
+public class BufferPoolTest {
+	private static final int CONTENT_LENGTH = 3 * 1024 * 1024 + 17;
+
+	@DisplayName("Test content spanning several chunks is preserved")
+	@Test
+	public void whenWriteAcrossChunksThenContentPreserved() throws IOException {
+		BufferPool cut = new BufferPool(64 * 1024 * 1024);
+		byte[] content = randomContent();
+
+		PooledBuffer buffer = write(cut, content);
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		buffer.writeTo(streamed);
+
+		assertThat(buffer.size()).isEqualTo(CONTENT_LENGTH);
+		assertThat(buffer.toByteArray()).isEqualTo(content);
+		assertThat(streamed.toByteArray()).isEqualTo(content);
+	}
+
+	@DisplayName("Test content spanning several chunks is read back")
+	@Test
+	public void whenReadAcrossChunksThenContentPreserved() throws IOException {
+		BufferPool cut = new BufferPool(64 * 1024 * 1024);
+		byte[] content = randomContent();
+
+		try (PooledBuffer buffer = write(cut, content); InputStream inputStream = buffer.newInputStream()) {
+			assertThat(inputStream.readAllBytes()).isEqualTo(content);
+			assertThat(inputStream.read()).isEqualTo(-1);
+		}
+	}
+
+	@DisplayName("Test released chunks are reused")
+	@Test
+	public void whenBufferReleasedThenChunksReused() {
+		BufferPool cut = new BufferPool(64 * 1024 * 1024);
+		byte[] content = randomContent();
+
+		write(cut, content).close();
+		long allocated = cut.getAllocatedBytes();
+		PooledBuffer second = write(cut, content);
+
+		assertThat(cut.getAllocatedBytes()).isEqualTo(allocated);
+		assertThat(cut.getReusedBytes()).isEqualTo(allocated);
+		assertThat(second.toByteArray()).isEqualTo(content);
+	}
+
+	@DisplayName("Test chunks stay in use until the last reference is released")
+	@Test
+	public void whenRetainedThenChunksNotReleasedUntilLastClose() {
+		BufferPool cut = new BufferPool(64 * 1024 * 1024);
+		PooledBuffer buffer = write(cut, randomContent());
+
+		assertThat(buffer.retain()).isTrue();
+		buffer.close();
+		assertThat(cut.getPooledBytes()).isZero();
+
+		buffer.close();
+		assertThat(cut.getPooledBytes()).isEqualTo(cut.getAllocatedBytes());
+		assertThat(buffer.retain()).isFalse();
+	}
+
+	@DisplayName("Test pool keeps no more than its limit")
+	@Test
+	public void whenOverPoolLimitThenChunksDropped() {
+		BufferPool cut = new BufferPool(0);
+
+		write(cut, randomContent()).close();
+
+		assertThat(cut.getPooledBytes()).isZero();
+	}
+
+	@DisplayName("Test stream cannot be written after hand over")
+	@Test
+	public void whenWrittenAfterHandOverThenIllegalState() {
+		ChunkedOutputStream stream = new BufferPool(0).newOutputStream();
+		stream.write(1);
+		stream.toBuffer();
+
+		assertThrows(IllegalStateException.class, () -> stream.write(2));
+	}
+
+	private PooledBuffer write(BufferPool pool, byte[] content) {
+		ChunkedOutputStream stream = pool.newOutputStream();
+		// Uneven writes, so some straddle chunk boundaries
+		int offset = 0;
+		while (offset < content.length) {
+			int count = Math.min(7919, content.length - offset);
+			stream.write(content, offset, count);
+			offset += count;
+		}
+		return stream.toBuffer();
+	}
+
+	private byte[] randomContent() {
+		byte[] content = new byte[CONTENT_LENGTH];
+		new Random(42).nextBytes(content);
+		return content;
+	}
+}
@@ -0,0 +1,157 @@
+package com.bradyp.api.imgconverter.service.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+
+import com.bradyp.imgconverter.service.cluster.ClusterRouter;
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test scenarios for {@link ClusterRouter}.
+ *
+ * Peers are played by a local HTTP server, or by a closed port for a peer that
+ * is down.
+ */
+public class ClusterRouterTest {
+	private static final String SELF = "http://localhost:1";
+
+	@DisplayName("Test every rendition of a source routes on the same key")
+	@Test
+	public void whenSameSourceThenSameRoutingKey() {
+		assertThat(ClusterRouter.routingKey("abc123.png")).isEqualTo("abc123");
+		assertThat(ClusterRouter.routingKey("abc123.jpg")).isEqualTo(ClusterRouter.routingKey("abc123.png"));
+		assertThat(ClusterRouter.routingKey("abc123")).isEqualTo("abc123");
+	}
+
+	@DisplayName("Test nothing is routed when clustering is disabled")
+	@Test
+	public void whenClusterDisabledThenHandledLocally() {
+		ClusterRouter cut = new ClusterRouter(new ImageConverterProperties());
+
+		assertThat(cut.remoteOwner("abc123.png")).isEmpty();
+		assertThat(cut.remoteHolders("abc123.png")).isEmpty();
+	}
+
+	@DisplayName("Test keys owned by this node are handled locally and the rest go to the peer")
+	@Test
+	public void whenOwnerDecidedThenSelfLocalAndPeerRemote() {
+		String peer = "http://localhost:2";
+		ClusterRouter cut = new ClusterRouter(clusterOf(Duration.ofSeconds(1), peer));
+
+		List<Optional<String>> owners = IntStream.range(0, 100)
+				.mapToObj(i -> cut.remoteOwner("source-" + i + ".png")).toList();
+
+		assertThat(owners).contains(Optional.empty(), Optional.of(peer));
+		assertThat(owners).allSatisfy(owner -> assertThat(owner).isIn(Optional.empty(), Optional.of(peer)));
+		assertThat(cut.remoteOwner("source-0.png")).isEqualTo(cut.remoteOwner("source-0.jpg"));
+	}
+
+	@DisplayName("Test a peer refusing connections leaves the ring until a probe finds it again")
+	@Test
+	public void whenPeerRefusesConnectionThenMarkedDownAndRestoredByProbe() throws Exception {
+		int port = freePort();
+		String peer = "http://127.0.0.1:" + port;
+		ClusterRouter cut = new ClusterRouter(clusterOf(Duration.ofSeconds(1), peer, "http://localhost:2"));
+		String fileName = ownedBy(cut, peer);
+
+		assertThat(cut.forwardConvert(peer, new URL("http://images/a.png"), "jpg")).isEmpty();
+		assertThat(cut.getMembers()).doesNotContain(peer);
+		String ownerWhileDown = cut.remoteOwner(fileName).orElse(SELF);
+		assertThat(ownerWhileDown).isNotEqualTo(peer);
+
+		HttpServer server = startPeer(port, 0);
+		try {
+			cut.probeDownPeers();
+		} finally {
+			server.stop(0);
+		}
+
+		assertThat(cut.getMembers()).contains(peer);
+		assertThat(cut.remoteOwner(fileName)).contains(peer);
+		// What was converted while the peer was away is still found
+		List<String> holders = cut.remoteHolders(fileName);
+		assertThat(holders).startsWith(peer);
+		if (!ownerWhileDown.equals(SELF)) {
+			assertThat(holders).contains(ownerWhileDown);
+		}
+	}
+
+	@DisplayName("Test a peer that is slow to answer stays on the ring")
+	@Test
+	public void whenPeerReadTimesOutThenNotMarkedDown() throws Exception {
+		int port = freePort();
+		String peer = "http://127.0.0.1:" + port;
+		ClusterRouter cut = new ClusterRouter(clusterOf(Duration.ofMillis(200), peer));
+
+		HttpServer server = startPeer(port, 2000);
+		try {
+			assertThrows(ResourceAccessException.class,
+					() -> cut.forwardConvert(peer, new URL("http://images/a.png"), "jpg"));
+		} finally {
+			server.stop(0);
+		}
+
+		assertThat(cut.getMembers()).contains(peer);
+	}
+
+	private ImageConverterProperties clusterOf(Duration readTimeout, String... peers) {
+		ImageConverterProperties properties = new ImageConverterProperties();
+		properties.getCluster().setEnabled(true);
+		properties.getCluster().setSelf(SELF);
+		properties.getCluster().setPeers(List.of(peers));
+		properties.getCluster().setReadTimeout(readTimeout);
+		return properties;
+	}
+
+	private String ownedBy(ClusterRouter router, String peer) {
+		return IntStream.range(0, 1000).mapToObj(i -> "source-" + i + ".png")
+				.filter(fileName -> router.remoteOwner(fileName).equals(Optional.of(peer))).findFirst()
+				.orElseThrow();
+	}
+
+	private int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	/**
+	 * Start a peer that answers every request with a conversion response, after
+	 * a delay.
+	 */
+	private HttpServer startPeer(int port, long delayMillis) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		server.createContext("/", exchange -> {
+			try {
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			byte[] body = "{\"format\":\"jpg\",\"path\":\"/api/v1/images/conversions/a.jpg\"}"
+					.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream output = exchange.getResponseBody()) {
+				output.write(body);
+			}
+		});
+		server.start();
+		return server;
+	}
+}
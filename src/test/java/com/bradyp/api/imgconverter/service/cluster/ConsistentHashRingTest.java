@@ -0,0 +1,95 @@
+package com.bradyp.api.imgconverter.service.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.bradyp.imgconverter.service.cluster.ConsistentHashRing;
+
+/**
+ * Test scenarios for {@link ConsistentHashRing}.
+ */
+public class ConsistentHashRingTest {
+	private static final int KEYS = 10_000;
+
+	@DisplayName("Test empty ring has no owner")
+	@Test
+	public void whenRingEmptyThenNoOwner() {
+		ConsistentHashRing ring = new ConsistentHashRing(16);
+
+		assertThat(ring.nodeFor("key")).isNull();
+	}
+
+	@DisplayName("Test keys spread across all nodes")
+	@Test
+	public void whenSeveralNodesThenKeysSpreadEvenly() {
+		ConsistentHashRing ring = ringOf("http://localhost:8080", "http://localhost:8081", "http://localhost:8082");
+
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < KEYS; i++) {
+			counts.merge(ring.nodeFor("source-" + i), 1, Integer::sum);
+		}
+
+		assertThat(counts).hasSize(3);
+		assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(KEYS / 5, KEYS / 2));
+	}
+
+	@DisplayName("Test removing a node only moves the keys it owned")
+	@Test
+	public void whenNodeRemovedThenOnlyItsKeysMove() {
+		ConsistentHashRing ring = ringOf("http://localhost:8080", "http://localhost:8081", "http://localhost:8082");
+
+		Map<String, String> before = new HashMap<>();
+		for (int i = 0; i < KEYS; i++) {
+			before.put("source-" + i, ring.nodeFor("source-" + i));
+		}
+
+		ring.remove("http://localhost:8081");
+
+		before.forEach((key, owner) -> {
+			String newOwner = ring.nodeFor(key);
+			assertThat(newOwner).isNotEqualTo("http://localhost:8081");
+			if (!owner.equals("http://localhost:8081")) {
+				assertThat(newOwner).isEqualTo(owner);
+			}
+		});
+	}
+
+	@DisplayName("Test re-adding a node restores its keys")
+	@Test
+	public void whenNodeReaddedThenOwnershipRestored() {
+		ConsistentHashRing ring = ringOf("http://localhost:8080", "http://localhost:8081");
+		String owner = ring.nodeFor("source-42");
+
+		ring.remove(owner);
+		ring.add(owner);
+
+		assertThat(ring.nodeFor("source-42")).isEqualTo(owner);
+	}
+
+	@DisplayName("Test nodes for a key start with its owner, then its owner once that is removed")
+	@Test
+	public void whenNodesForKeyThenOwnerThenFallback() {
+		ConsistentHashRing ring = ringOf("http://localhost:8080", "http://localhost:8081", "http://localhost:8082");
+
+		List<String> nodes = ring.nodesFor("source-42", 2);
+		ring.remove(nodes.get(0));
+
+		assertThat(nodes).hasSize(2).doesNotHaveDuplicates();
+		assertThat(ring.nodeFor("source-42")).isEqualTo(nodes.get(1));
+		assertThat(ring.nodesFor("source-42", 5)).hasSize(2);
+	}
+
+	private ConsistentHashRing ringOf(String... nodes) {
+		ConsistentHashRing ring = new ConsistentHashRing(128);
+		for (String node : nodes) {
+			ring.add(node);
+		}
+		return ring;
+	}
+}
@@ -0,0 +1,77 @@
+package com.bradyp.api.imgconverter.service.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.bradyp.imgconverter.service.codec.ImageEncoder;
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
+
+/**
+ * Test scenarios for {@link ImageEncoder}.
+ * 
+ * The PNG threshold is lowered and parallelism fixed so small images take the
+ * parallel path, and its output is told apart from ImageIO's by comparing
+ * bytes.
+ */
+public class ImageEncoderTest {
+	private ImageEncoder cut = new ImageEncoder(parallelFromOnePixel());
+
+	@AfterEach
+	public void shutdown() {
+		cut.shutdown();
+	}
+
+	@DisplayName("Test foreground PNG encodes use the parallel encoder")
+	@Test
+	public void whenForegroundPngThenParallelEncoder() throws IOException {
+		BufferedImage image = newImage();
+
+		assertThat(encode(image, false)).isNotEqualTo(imageIoEncode(image));
+	}
+
+	@DisplayName("Test background PNG encodes stay on ImageIO")
+	@Test
+	public void whenBackgroundPngThenImageIo() throws IOException {
+		BufferedImage image = newImage();
+
+		assertThat(encode(image, true)).isEqualTo(imageIoEncode(image));
+	}
+
+	private byte[] encode(BufferedImage image, boolean background) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		assertThat(cut.write(image, "png", output, background)).isTrue();
+		return output.toByteArray();
+	}
+
+	private byte[] imageIoEncode(BufferedImage image) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", output);
+		return output.toByteArray();
+	}
+
+	private BufferedImage newImage() {
+		BufferedImage image = new BufferedImage(200, 300, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				image.setRGB(x, y, (x << 16) | (y << 8) | (x ^ y));
+			}
+		}
+		return image;
+	}
+
+	private static ImageConverterProperties parallelFromOnePixel() {
+		ImageConverterProperties properties = new ImageConverterProperties();
+		properties.getPng().setParallelThreshold(1);
+		properties.getPng().setParallelism(4);
+		return properties;
+	}
+}
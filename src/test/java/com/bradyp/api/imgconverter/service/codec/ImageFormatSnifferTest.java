@@ -0,0 +1,119 @@
+package com.bradyp.api.imgconverter.service.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.bradyp.imgconverter.service.codec.ImageFormatSniffer;
+
+/**
+ * Test scenarios for {@link ImageFormatSniffer}.
+ */
+public class ImageFormatSnifferTest {
+	private static final int[] BMP_INFO_HEADER_SIZES = { 12, 40, 52, 56, 64, 108, 124 };
+
+	@DisplayName("Test the test images are identified and the stream left in place")
+	@Test
+	public void whenSniffTestImagesThenFormatIdentified() throws IOException {
+		assertSniffed("for-png-tests/png-test.png", "png");
+		assertSniffed("for-jpg-tests/jpg-test.jpg", "jpg");
+		assertSniffed("for-gif-tests/gif-test.gif", "gif");
+		assertSniffed("for-bmp-tests/bmp-test.bmp", "bmp");
+		assertSniffed("for-unsupported-tests/not-an-image.txt", null);
+	}
+
+	@DisplayName("Test both GIF versions are identified")
+	@Test
+	public void whenGif87aOrGif89aThenGif() {
+		assertThat(sniff(ascii("GIF87a"))).isEqualTo("gif");
+		assertThat(sniff(ascii("GIF89a"))).isEqualTo("gif");
+		assertThat(sniff(ascii("GIF88a"))).isNull();
+	}
+
+	@DisplayName("Test BMPs are identified by their info header size")
+	@Test
+	public void whenBmpInfoHeaderKnownThenBmp() {
+		for (int size : BMP_INFO_HEADER_SIZES) {
+			assertThat(sniff(bmpHeader(size))).as("info header of %d bytes", size).isEqualTo("bmp");
+		}
+		assertThat(sniff(bmpHeader(41))).isNull();
+		assertThat(sniff(bmpHeader(0))).isNull();
+	}
+
+	@DisplayName("Test headers shorter than their magic are not identified")
+	@Test
+	public void whenHeaderTruncatedThenNotIdentified() {
+		assertThat(sniff(new byte[0])).isNull();
+		assertThat(sniff(new byte[] { (byte) 0x89, 'P', 'N', 'G' })).isNull();
+		assertThat(sniff(new byte[] { (byte) 0xff, (byte) 0xd8 })).isNull();
+		assertThat(sniff(ascii("GIF8"))).isNull();
+		assertThat(sniff(Arrays.copyOf(bmpHeader(40), ImageFormatSniffer.HEADER_LENGTH - 1))).isNull();
+	}
+
+	@DisplayName("Test only the given length of the header is looked at")
+	@Test
+	public void whenLengthShorterThanArrayThenOnlyLengthUsed() {
+		byte[] header = Arrays.copyOf(ascii("GIF89a"), 32);
+
+		assertThat(ImageFormatSniffer.sniff(header, 6)).isEqualTo("gif");
+		assertThat(ImageFormatSniffer.sniff(header, 5)).isNull();
+	}
+
+	@DisplayName("Test a short stream is identified and left in place")
+	@Test
+	public void whenStreamShorterThanHeaderThenSniffed() throws IOException {
+		InputStream input = new ByteArrayInputStream(new byte[] { (byte) 0xff, (byte) 0xd8, (byte) 0xff, 0x00 });
+
+		assertThat(ImageFormatSniffer.sniff(input)).isEqualTo("jpg");
+		assertThat(input.readAllBytes()).hasSize(4);
+	}
+
+	@DisplayName("Test streams without mark support are refused")
+	@Test
+	public void whenStreamNotMarkableThenIllegalArgumentException() throws IOException {
+		try (InputStream input = new FileInputStream("src/test/resources/for-png-tests/png-test.png")) {
+			assertThrows(IllegalArgumentException.class, () -> ImageFormatSniffer.sniff(input));
+		}
+	}
+
+	private void assertSniffed(String resource, String expected) throws IOException {
+		try (InputStream input = new BufferedInputStream(new FileInputStream("src/test/resources/" + resource))) {
+			assertThat(ImageFormatSniffer.sniff(input)).as(resource).isEqualTo(expected);
+			try (InputStream original = new FileInputStream("src/test/resources/" + resource)) {
+				assertThat(input.readAllBytes()).isEqualTo(original.readAllBytes());
+			}
+		}
+	}
+
+	private static String sniff(byte[] header) {
+		return ImageFormatSniffer.sniff(header, header.length);
+	}
+
+	private static byte[] ascii(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * A BMP file header followed by the size field of its info header.
+	 */
+	private static byte[] bmpHeader(int infoHeaderSize) {
+		byte[] header = new byte[ImageFormatSniffer.HEADER_LENGTH];
+		header[0] = 'B';
+		header[1] = 'M';
+		header[14] = (byte) infoHeaderSize;
+		header[15] = (byte) (infoHeaderSize >>> 8);
+		header[16] = (byte) (infoHeaderSize >>> 16);
+		header[17] = (byte) (infoHeaderSize >>> 24);
+		return header;
+	}
+}
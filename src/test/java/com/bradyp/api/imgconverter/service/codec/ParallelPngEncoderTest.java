@@ -0,0 +1,117 @@
+package com.bradyp.api.imgconverter.service.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.bradyp.imgconverter.service.codec.ParallelPngEncoder;
+
+/**
+ * Test scenarios for {@link ParallelPngEncoder}.
+ * 
+ * Images are tall enough to be split into several bands, so these exercise the
+ * joining of independently deflated bands into one stream.
+ */
+public class ParallelPngEncoderTest {
+	private ForkJoinPool pool = new ForkJoinPool(4);
+
+	private ParallelPngEncoder cut = new ParallelPngEncoder(pool, Deflater.DEFAULT_COMPRESSION);
+
+	@AfterEach
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	@DisplayName("Test opaque image round trips through parallel PNG encoding")
+	@Test
+	public void whenEncodeOpaqueImageThenPixelsPreserved() throws IOException {
+		BufferedImage image = newImage(BufferedImage.TYPE_INT_RGB, 501, 1203);
+
+		BufferedImage actual = roundTrip(image);
+
+		assertThat(actual.getColorModel().hasAlpha()).isFalse();
+		assertImagesEqual(image, actual);
+	}
+
+	@DisplayName("Test translucent image round trips through parallel PNG encoding")
+	@Test
+	public void whenEncodeTranslucentImageThenPixelsPreserved() throws IOException {
+		BufferedImage image = newImage(BufferedImage.TYPE_INT_ARGB, 333, 1501);
+
+		BufferedImage actual = roundTrip(image);
+
+		assertThat(actual.getColorModel().hasAlpha()).isTrue();
+		assertImagesEqual(image, actual);
+	}
+
+	@DisplayName("Test single row image")
+	@Test
+	public void whenEncodeSingleRowThenPixelsPreserved() throws IOException {
+		BufferedImage image = newImage(BufferedImage.TYPE_3BYTE_BGR, 97, 1);
+
+		assertImagesEqual(image, roundTrip(image));
+	}
+
+	@DisplayName("Test 16-bit images are not handled")
+	@Test
+	public void whenImageHasSixteenBitComponentsThenCannotEncode() {
+		BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_USHORT_GRAY);
+
+		assertThat(ParallelPngEncoder.canEncode(image)).isFalse();
+	}
+
+	@DisplayName("Test indexed images are left to ImageIO's palette output")
+	@Test
+	public void whenImageIndexedThenCannotEncode() {
+		BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_BYTE_INDEXED);
+
+		assertThat(ParallelPngEncoder.canEncode(image)).isFalse();
+	}
+
+	private BufferedImage roundTrip(BufferedImage image) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		cut.encode(image, output);
+
+		return ImageIO.read(new ByteArrayInputStream(output.toByteArray()));
+	}
+
+	private BufferedImage newImage(int type, int width, int height) {
+		Random random = new Random(width * height);
+		BufferedImage image = new BufferedImage(width, height, type);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				// Mix gradients, which compress well, with noise, which does not
+				int rgb = (x + y) % 7 == 0 ? random.nextInt() : (x << 16) | (y << 8) | (x ^ y);
+				image.setRGB(x, y, rgb);
+			}
+		}
+		return image;
+	}
+
+	private void assertImagesEqual(BufferedImage expected, BufferedImage actual) {
+		if (expected.getWidth() != actual.getWidth() || expected.getHeight() != actual.getHeight()) {
+			fail("Images have different dimensions");
+		}
+
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+					fail("Images are different, found a different pixel at: x = " + x + ", y = " + y);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.bradyp.api.imgconverter.service.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.bradyp.imgconverter.service.codec.PixelFormatNormalizer;
+
+/**
+ * Test scenarios for {@link PixelFormatNormalizer}.
+ */
+public class PixelFormatNormalizerTest {
+	private static final int BACKGROUND = 0x2040ff;
+
+	private PixelFormatNormalizer cut = new PixelFormatNormalizer(BACKGROUND);
+
+	@DisplayName("Test opaque 8-bit images need no normalization")
+	@Test
+	public void whenOpaqueEightBitThenNoNormalizationNeeded() {
+		BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_3BYTE_BGR);
+
+		assertThat(PixelFormatNormalizer.needsNormalization(image, "jpg")).isFalse();
+		assertThat(PixelFormatNormalizer.needsNormalization(image, "bmp")).isFalse();
+	}
+
+	@DisplayName("Test alpha only needs normalization for jpg and bmp")
+	@Test
+	public void whenAlphaThenNormalizationNeededForJpgAndBmpOnly() {
+		BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+
+		assertThat(PixelFormatNormalizer.needsNormalization(image, "jpg")).isTrue();
+		assertThat(PixelFormatNormalizer.needsNormalization(image, "bmp")).isTrue();
+		assertThat(PixelFormatNormalizer.needsNormalization(image, "png")).isFalse();
+		assertThat(PixelFormatNormalizer.needsNormalization(image, "gif")).isFalse();
+	}
+
+	@DisplayName("Test alpha is flattened onto the background")
+	@Test
+	public void whenArgbThenFlattenedOntoBackground() throws IOException {
+		BufferedImage image = new BufferedImage(3, 1, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, 0xff123456);
+		image.setRGB(1, 0, 0x00123456);
+		image.setRGB(2, 0, 0x80ffffff);
+
+		BufferedImage actual = cut.normalize(image);
+
+		assertThat(actual.getColorModel().hasAlpha()).isFalse();
+		assertThat(actual.getRGB(0, 0) & 0xffffff).isEqualTo(0x123456);
+		assertThat(actual.getRGB(1, 0) & 0xffffff).isEqualTo(BACKGROUND);
+		assertThat(actual.getRGB(2, 0) & 0xffffff).isEqualTo(0x90a0ff);
+		assertWritable(actual);
+	}
+
+	@DisplayName("Test premultiplied alpha is flattened onto the background")
+	@Test
+	public void whenPremultipliedThenFlattenedOntoBackground() throws IOException {
+		BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_4BYTE_ABGR_PRE);
+		image.setRGB(0, 0, 0x00123456);
+		image.setRGB(1, 0, 0xffabcdef);
+
+		BufferedImage actual = cut.normalize(image);
+
+		assertThat(actual.getRGB(0, 0) & 0xffffff).isEqualTo(BACKGROUND);
+		assertThat(actual.getRGB(1, 0) & 0xffffff).isEqualTo(0xabcdef);
+		assertWritable(actual);
+	}
+
+	@DisplayName("Test indexed image with transparency is expanded to RGB")
+	@Test
+	public void whenIndexedWithTransparencyThenExpandedToRgb() throws IOException {
+		byte[] reds = { 0, (byte) 0xff };
+		byte[] greens = { 0, (byte) 0x80 };
+		byte[] blues = { 0, 0 };
+		IndexColorModel palette = new IndexColorModel(8, 2, reds, greens, blues, 0);
+		BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_BYTE_INDEXED, palette);
+		image.getRaster().setSample(0, 0, 0, 0);
+		image.getRaster().setSample(1, 0, 0, 1);
+
+		BufferedImage actual = cut.normalize(image);
+
+		assertThat(actual.getType()).isEqualTo(BufferedImage.TYPE_INT_RGB);
+		assertThat(actual.getRGB(0, 0) & 0xffffff).isEqualTo(BACKGROUND);
+		assertThat(actual.getRGB(1, 0) & 0xffffff).isEqualTo(0xff8000);
+		assertWritable(actual);
+	}
+
+	@DisplayName("Test 16-bit components are reduced to 8 bits")
+	@Test
+	public void whenSixteenBitThenReducedToEightBits() throws IOException {
+		ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), true, false,
+				Transparency.TRANSLUCENT, DataBuffer.TYPE_USHORT);
+		WritableRaster raster = colorModel.createCompatibleWritableRaster(1, 1);
+		raster.setPixel(0, 0, new int[] { 0xffff, 0x8080, 0x0000, 0xffff });
+		BufferedImage image = new BufferedImage(colorModel, raster, false, null);
+
+		assertThat(PixelFormatNormalizer.needsNormalization(image, "jpg")).isTrue();
+
+		BufferedImage actual = cut.normalize(image);
+
+		assertThat(actual.getRGB(0, 0) & 0xffffff).isEqualTo(0xff8000);
+		assertWritable(actual);
+	}
+
+	@DisplayName("Test opaque 16-bit grey stays grey")
+	@Test
+	public void whenSixteenBitGreyThenEightBitGrey() throws IOException {
+		BufferedImage image = new BufferedImage(2, 1, BufferedImage.TYPE_USHORT_GRAY);
+		image.getRaster().setSample(0, 0, 0, 0);
+		image.getRaster().setSample(1, 0, 0, 0xffff);
+
+		BufferedImage actual = cut.normalize(image);
+
+		assertThat(actual.getType()).isEqualTo(BufferedImage.TYPE_BYTE_GRAY);
+		assertThat(actual.getRaster().getSample(0, 0, 0)).isEqualTo(0);
+		assertThat(actual.getRaster().getSample(1, 0, 0)).isEqualTo(0xff);
+		assertWritable(actual);
+	}
+
+	private void assertWritable(BufferedImage image) throws IOException {
+		assertThat(ImageIO.write(image, "jpg", new ByteArrayOutputStream())).isTrue();
+		assertThat(ImageIO.write(image, "bmp", new ByteArrayOutputStream())).isTrue();
+	}
+}
@@ -0,0 +1,120 @@
+package com.bradyp.api.imgconverter.service.profiling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.bradyp.imgconverter.service.model.ConversionBreakdown;
+import com.bradyp.imgconverter.service.model.ConversionProfile;
+import com.bradyp.imgconverter.service.model.StageSummary;
+import com.bradyp.imgconverter.service.profiling.ConversionEvent;
+import com.bradyp.imgconverter.service.profiling.ConversionProfiler;
+import com.bradyp.imgconverter.service.profiling.DecodeEvent;
+import com.bradyp.imgconverter.service.profiling.EncodeEvent;
+import com.bradyp.imgconverter.service.profiling.ForwardEvent;
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
+
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.RecordingState;
+
+/**
+ * Test scenarios for {@link ConversionProfiler}.
+ */
+public class ConversionProfilerTest {
+	private static final Duration RECORDING = Duration.ofSeconds(2);
+
+	@DisplayName("Test stage events are attributed to their conversion")
+	@Test
+	public void whenConversionRecordedThenStagesBrokenDown() throws Exception {
+		ConversionProfiler cut = new ConversionProfiler(new ImageConverterProperties());
+
+		CompletableFuture<ConversionProfile> profile = startProfiling(cut);
+		ConversionEvent conversion = new ConversionEvent("1.png", "png");
+		conversion.begin();
+		stage(new DecodeEvent("1.png", "png"), 20);
+		stage(new EncodeEvent("1.png", "png"), 30);
+		EncodeEvent speculative = new EncodeEvent("1.gif", "gif");
+		speculative.speculative = true;
+		stage(speculative, 5);
+		conversion.sourceFormat = "jpg";
+		conversion.width = 10;
+		conversion.height = 20;
+		conversion.commit();
+
+		ConversionProfile result = profile.get(RECORDING.toSeconds() + 10, TimeUnit.SECONDS);
+
+		assertThat(result.conversions()).isEqualTo(1);
+		ConversionBreakdown breakdown = result.slowest().get(0);
+		assertThat(breakdown.key()).isEqualTo("1.png");
+		assertThat(breakdown.sourceFormat()).isEqualTo("jpg");
+		assertThat(breakdown.width()).isEqualTo(10);
+		assertThat(breakdown.stageMillis()).containsKeys(ConversionProfiler.DECODE, ConversionProfiler.ENCODE,
+				ConversionProfiler.OTHER);
+		assertThat(breakdown.stageMillis()).doesNotContainKey(ConversionProfiler.SPECULATIVE_ENCODE);
+		assertThat(breakdown.stageMillis().get(ConversionProfiler.ENCODE)).isGreaterThanOrEqualTo(30);
+		assertThat(breakdown.totalMillis()).isGreaterThanOrEqualTo(55);
+		assertThat(result.stages()).extracting(StageSummary::stage).contains(ConversionProfiler.SPECULATIVE_ENCODE);
+	}
+
+	@DisplayName("Test a conversion routed to its owner is broken down into its forward")
+	@Test
+	public void whenConversionForwardedThenForwardStageAttributed() throws Exception {
+		ConversionProfiler cut = new ConversionProfiler(new ImageConverterProperties());
+
+		CompletableFuture<ConversionProfile> profile = startProfiling(cut);
+		ConversionEvent conversion = new ConversionEvent("1.png", "png");
+		conversion.begin();
+		stage(new ForwardEvent("1.png", "png", "http://peer:8080", "convert"), 30);
+		conversion.forwarded = true;
+		conversion.commit();
+		stage(new ForwardEvent("2.png", "png", "http://peer:8080", "fetch"), 5);
+
+		ConversionProfile result = profile.get(RECORDING.toSeconds() + 10, TimeUnit.SECONDS);
+
+		assertThat(result.conversions()).isEqualTo(1);
+		ConversionBreakdown breakdown = result.slowest().get(0);
+		assertThat(breakdown.stageMillis().get(ConversionProfiler.FORWARD)).isGreaterThanOrEqualTo(30);
+		assertThat(result.stages()).filteredOn(stage -> stage.stage().equals(ConversionProfiler.FORWARD))
+				.extracting(StageSummary::count).containsExactly(2L);
+	}
+
+	@DisplayName("Test a second recording is refused while one is running")
+	@Test
+	public void whenAlreadyRecordingThenRefused() throws Exception {
+		ConversionProfiler cut = new ConversionProfiler(new ImageConverterProperties());
+
+		CompletableFuture<ConversionProfile> profile = startProfiling(cut);
+
+		assertThrows(IllegalStateException.class, () -> cut.profile(RECORDING, 10));
+		profile.get(RECORDING.toSeconds() + 10, TimeUnit.SECONDS);
+	}
+
+	private CompletableFuture<ConversionProfile> startProfiling(ConversionProfiler cut) throws InterruptedException {
+		CompletableFuture<ConversionProfile> profile = CompletableFuture.supplyAsync(() -> {
+			try {
+				return cut.profile(RECORDING, 10);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+
+		while (FlightRecorder.getFlightRecorder().getRecordings().stream()
+				.noneMatch(recording -> recording.getState() == RecordingState.RUNNING)) {
+			Thread.sleep(10);
+		}
+		return profile;
+	}
+
+	private void stage(Event event, long millis) throws InterruptedException {
+		event.begin();
+		Thread.sleep(millis);
+		event.commit();
+	}
+}
@@ -0,0 +1,93 @@
+package com.bradyp.api.imgconverter.service.raster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.image.BufferedImage;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import com.bradyp.imgconverter.service.raster.DecodedImage;
+import com.bradyp.imgconverter.service.raster.RasterCache;
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
+
+/**
+ * Test scenarios for {@link RasterCache}.
+ */
+public class RasterCacheTest {
+	/** 10x10 TYPE_INT_RGB image weighs 400 bytes. */
+	private static final long IMAGE_BYTES = 400;
+
+	@DisplayName("Test cached image is returned")
+	@Test
+	public void whenPutThenGetReturnsSameImage() {
+		RasterCache cut = newCache(DataSize.ofKilobytes(1), Duration.ofMinutes(1));
+		DecodedImage image = newImage();
+
+		cut.put(url("a"), image);
+
+		assertThat(cut.get(url("a"))).isSameAs(image);
+		assertThat(cut.getCurrentBytes()).isEqualTo(IMAGE_BYTES);
+	}
+
+	@DisplayName("Test least recently used image is evicted when over budget")
+	@Test
+	public void whenOverBudgetThenLeastRecentlyUsedEvicted() {
+		RasterCache cut = newCache(DataSize.ofBytes(2 * IMAGE_BYTES), Duration.ofMinutes(1));
+
+		cut.put(url("a"), newImage());
+		cut.put(url("b"), newImage());
+		cut.get(url("a"));
+		cut.put(url("c"), newImage());
+
+		assertThat(cut.get(url("a"))).isNotNull();
+		assertThat(cut.get(url("b"))).isNull();
+		assertThat(cut.get(url("c"))).isNotNull();
+		assertThat(cut.getCurrentBytes()).isEqualTo(2 * IMAGE_BYTES);
+	}
+
+	@DisplayName("Test image larger than the budget is not cached")
+	@Test
+	public void whenImageLargerThanBudgetThenNotCached() {
+		RasterCache cut = newCache(DataSize.ofBytes(IMAGE_BYTES - 1), Duration.ofMinutes(1));
+
+		cut.put(url("a"), newImage());
+
+		assertThat(cut.get(url("a"))).isNull();
+		assertThat(cut.getCurrentBytes()).isZero();
+	}
+
+	@DisplayName("Test expired image is not returned")
+	@Test
+	public void whenExpiredThenNotReturned() {
+		RasterCache cut = newCache(DataSize.ofKilobytes(1), Duration.ZERO);
+
+		cut.put(url("a"), newImage());
+
+		assertThat(cut.get(url("a"))).isNull();
+		assertThat(cut.getCurrentBytes()).isZero();
+	}
+
+	private RasterCache newCache(DataSize maxSize, Duration timeToLive) {
+		ImageConverterProperties properties = new ImageConverterProperties();
+		properties.getRasterCache().setMaxSize(maxSize);
+		properties.getRasterCache().setTimeToLive(timeToLive);
+		return new RasterCache(properties);
+	}
+
+	private DecodedImage newImage() {
+		return new DecodedImage(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB), "png");
+	}
+
+	private URL url(String name) {
+		try {
+			return new URL(String.format("http://localhost/%s.png", name));
+		} catch (MalformedURLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.bradyp.api.imgconverter.service.rendition;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.bradyp.imgconverter.service.rendition.RenditionScheduler;
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
+
+/**
+ * Test scenarios for {@link RenditionScheduler}.
+ * 
+ * The conversion executor is a mock whose queue is reported non-empty while
+ * {@link #busy} is set, conversions outside it are in flight while
+ * {@link #converting} is set, and the CPU threshold is out of reach, so the
+ * node is busy exactly when a test says so. Sets run one after another, so waiting for
+ * a marker set scheduled last shows every earlier set is done with.
+ */
+public class RenditionSchedulerTest {
+	private static final long TIMEOUT_SECONDS = 10;
+
+	private final AtomicBoolean busy = new AtomicBoolean();
+
+	private final AtomicBoolean converting = new AtomicBoolean();
+
+	private final Queue<String> encoded = new ConcurrentLinkedQueue<>();
+
+	private RenditionScheduler cut;
+
+	@AfterEach
+	public void shutdown() {
+		cut.shutdown();
+	}
+
+	@DisplayName("Test only the configured formats are precomputed")
+	@Test
+	public void whenFormatsConfiguredThenOthersSkipped() throws InterruptedException {
+		ImageConverterProperties properties = properties(Duration.ofSeconds(5), 4);
+		properties.getRenditions().setFormats(List.of("png", "bmp"));
+		cut = new RenditionScheduler(properties, conversionExecutor());
+
+		cut.schedule("a.jpg", List.of("png", "gif", "bmp"), converting::get, format -> encoded.add("a." + format));
+		awaitMarker();
+
+		assertThat(encoded).containsExactly("a.png", "a.bmp");
+	}
+
+	@DisplayName("Test a set is abandoned once it is older than max-age while the node is busy")
+	@Test
+	public void whenBusyPastMaxAgeThenSetAbandoned() throws InterruptedException {
+		cut = new RenditionScheduler(properties(Duration.ofMillis(300), 4), conversionExecutor());
+
+		busy.set(true);
+		cut.schedule("a.jpg", List.of("png", "gif"), converting::get, format -> encoded.add("a." + format));
+		Thread.sleep(800);
+		busy.set(false);
+		awaitMarker();
+
+		assertThat(encoded).isEmpty();
+	}
+
+	@DisplayName("Test a set waits while the node is busy and runs once it is idle")
+	@Test
+	public void whenBusyWithinMaxAgeThenSetRunsWhenIdle() throws InterruptedException {
+		cut = new RenditionScheduler(properties(Duration.ofSeconds(5), 4), conversionExecutor());
+
+		busy.set(true);
+		cut.schedule("a.jpg", List.of("png"), converting::get, format -> encoded.add("a." + format));
+		Thread.sleep(300);
+		assertThat(encoded).isEmpty();
+		busy.set(false);
+		awaitMarker();
+
+		assertThat(encoded).containsExactly("a.png");
+	}
+
+	@DisplayName("Test a set waits while conversions outside the executor are in flight")
+	@Test
+	public void whenConvertingOnRequestThreadsThenSetWaits() throws InterruptedException {
+		cut = new RenditionScheduler(properties(Duration.ofSeconds(5), 4), conversionExecutor());
+
+		converting.set(true);
+		cut.schedule("a.jpg", List.of("png"), converting::get, format -> encoded.add("a." + format));
+		Thread.sleep(300);
+		assertThat(encoded).isEmpty();
+		converting.set(false);
+		awaitMarker();
+
+		assertThat(encoded).containsExactly("a.png");
+	}
+
+	@DisplayName("Test the oldest waiting set is dropped when the queue is full")
+	@Test
+	public void whenQueueFullThenOldestSetDropped() throws InterruptedException {
+		cut = new RenditionScheduler(properties(Duration.ofSeconds(5), 1), conversionExecutor());
+
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		cut.schedule("blocker.jpg", List.of("png"), converting::get, format -> {
+			started.countDown();
+			await(release);
+		});
+		assertThat(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+		CountDownLatch done = new CountDownLatch(1);
+		cut.schedule("a.jpg", List.of("png"), converting::get, format -> encoded.add("a." + format));
+		cut.schedule("b.jpg", List.of("png"), converting::get, format -> {
+			encoded.add("b." + format);
+			done.countDown();
+		});
+		release.countDown();
+
+		// A marker would itself push a set out of the one-slot queue
+		assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+		assertThat(encoded).containsExactly("b.png");
+	}
+
+	/**
+	 * Schedule a marker set and wait for it to run.
+	 */
+	private void awaitMarker() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		cut.schedule("marker.jpg", List.of("png"), converting::get, format -> done.countDown());
+		assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+	}
+
+	private ThreadPoolTaskExecutor conversionExecutor() {
+		ThreadPoolTaskExecutor executor = mock(ThreadPoolTaskExecutor.class);
+		when(executor.getQueueSize()).thenAnswer(invocation -> busy.get() ? 1 : 0);
+		when(executor.getCorePoolSize()).thenReturn(2);
+		return executor;
+	}
+
+	private static ImageConverterProperties properties(Duration maxAge, int queueCapacity) {
+		ImageConverterProperties properties = new ImageConverterProperties();
+		properties.getRenditions().setMaxAge(maxAge);
+		properties.getRenditions().setQueueCapacity(queueCapacity);
+		// Only the mocked executor decides whether the node is busy
+		properties.getRenditions().setMaxCpuLoad(1.0);
+		return properties;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.bradyp.api.imgconverter.service.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import com.bradyp.imgconverter.service.ImageTooLargeException;
+import com.bradyp.imgconverter.service.buffer.PooledBuffer;
+import com.bradyp.imgconverter.service.store.ImageStore;
+import com.bradyp.imgconverter.spring.ImageConverterProperties;
+
+/**
+ * Test scenarios for {@link ImageStore}, with a 100 byte budget of which
+ * speculative renditions may use 40.
+ */
+public class ImageStoreTest {
+	private ImageStore cut = new ImageStore(smallStore());
+
+	@DisplayName("Test an image larger than the store is refused")
+	@Test
+	public void whenImageLargerThanStoreThenImageTooLargeException() {
+		assertThrows(ImageTooLargeException.class, () -> cut.put("a.png", image(101)));
+
+		assertThat(cut.contains("a.png")).isFalse();
+		assertThat(cut.getCurrentBytes()).isZero();
+	}
+
+	@DisplayName("Test speculative renditions are evicted before requested images")
+	@Test
+	public void whenStoreFullThenSpeculativeEvictedFirst() {
+		cut.put("a.png", image(30));
+		cut.putSpeculative("a.gif", image(30));
+		cut.put("b.png", image(30));
+
+		cut.put("c.png", image(30));
+
+		assertThat(cut.contains("a.gif")).isFalse();
+		assertThat(cut.contains("a.png")).isTrue();
+		assertThat(cut.contains("b.png")).isTrue();
+		assertThat(cut.contains("c.png")).isTrue();
+		assertThat(cut.getCurrentBytes()).isEqualTo(90);
+	}
+
+	@DisplayName("Test speculative renditions stay within their own budget")
+	@Test
+	public void whenSpeculativeBudgetExceededThenOldestRenditionEvicted() {
+		cut.put("a.png", image(30));
+		cut.putSpeculative("a.gif", image(25));
+		cut.putSpeculative("a.bmp", image(25));
+		cut.putSpeculative("a.jpg", image(41));
+
+		assertThat(cut.contains("a.png")).isTrue();
+		assertThat(cut.contains("a.gif")).isFalse();
+		assertThat(cut.contains("a.bmp")).isTrue();
+		assertThat(cut.contains("a.jpg")).isFalse();
+		assertThat(cut.getSpeculativeBytes()).isEqualTo(25);
+	}
+
+	@DisplayName("Test a speculative rendition that is read is kept like a requested image")
+	@Test
+	public void whenSpeculativeRenditionOpenedThenPromoted() {
+		cut.putSpeculative("a.gif", image(30));
+		try (PooledBuffer image = cut.open("a.gif")) {
+			assertThat(image.size()).isEqualTo(30);
+		}
+
+		cut.putSpeculative("a.bmp", image(30));
+		cut.put("b.png", image(41));
+
+		assertThat(cut.contains("a.gif")).isTrue();
+		assertThat(cut.contains("a.bmp")).isFalse();
+		assertThat(cut.getSpeculativeBytes()).isZero();
+	}
+
+	@DisplayName("Test a speculative rendition does not replace a stored image")
+	@Test
+	public void whenAlreadyStoredThenSpeculativeIgnored() {
+		cut.put("a.gif", image(10));
+		cut.putSpeculative("a.gif", image(20));
+
+		try (PooledBuffer image = cut.open("a.gif")) {
+			assertThat(image.size()).isEqualTo(10);
+		}
+	}
+
+	private PooledBuffer image(int size) {
+		return PooledBuffer.wrap(new byte[size]);
+	}
+
+	private static ImageConverterProperties smallStore() {
+		ImageConverterProperties properties = new ImageConverterProperties();
+		properties.getStore().setMaxSize(DataSize.ofBytes(100));
+		properties.getStore().setSpeculativeMaxSize(DataSize.ofBytes(40));
+		return properties;
+	}
+}